@@ -0,0 +1,63 @@
+package fastcampus.spring.batch.part3;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 파일이 gzip 이면 읽으면서 압축을 푸는 Resource. (gzip이 아니면 그대로 읽는다)
+ * 압축 여부는 파일 이름이 아니라 앞의 2 byte(1f 8b)로 판단한다. -> 기존 reader의 resource를 감싸기만 하면 된다.
+ * 압축을 푼 파일을 디스크에 쓰지 않고, 큰 buffer로 읽으면서 바로 푼다.
+ *
+ * FlatFileItemReader는 재시작 시 처음부터 읽으면서 이미 읽은 줄을 건너뛴다.
+ * 블록 단위로 다시 찾아가야 하면 GzipBlockItemReader를 사용한다.
+ */
+public class DecompressingResource extends AbstractResource {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Resource delegate;
+
+    public DecompressingResource(Resource delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        InputStream inputStream = new BufferedInputStream(delegate.getInputStream(), BUFFER_SIZE);
+
+        inputStream.mark(2);
+        int id1 = inputStream.read();
+        int id2 = inputStream.read();
+        inputStream.reset();
+
+        if (id1 == 0x1f && id2 == 0x8b) {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+        return inputStream;
+    }
+
+    @Override
+    public boolean exists() {
+        return delegate.exists();
+    }
+
+    @Override
+    public boolean isReadable() {
+        return delegate.isReadable();
+    }
+
+    @Override
+    public String getFilename() {
+        return delegate.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return "decompressing " + delegate.getDescription();
+    }
+}
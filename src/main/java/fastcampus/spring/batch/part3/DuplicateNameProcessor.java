@@ -0,0 +1,239 @@
+package fastcampus.spring.batch.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 이번 import에서 이미 나온 이름이면 null을 반환(filter)하는 processor. (기존 HashSet<String> dupSet 대신)
+ * - 이름 대신 64bit hash를 NameHashSet에 저장한다. 앞에 NameBloomFilter를 두면 처음 보는 이름은 NameHashSet을 찾지 않는다.
+ * - hash가 이미 있으면 '중복일 수 있다' 이므로 정확하게 확인한다.
+ *   처리 중인 chunk의 이름(inFlight)에 있거나, db에 저장되어 있으면(existsInStore) 중복이다. 둘 다 아니면 hash 충돌이라 저장한다.
+ * - inFlight는 이름 -> 처음 받아들인 item 이다. 같은 item을 다시 처리하는 경우(fault tolerant 재처리)는 중복이 아니다.
+ *   chunk가 commit 되면(afterChunk) db에서 확인할 수 있으므로 지우고, rollback 되면(afterChunkError) 저장되지 않았으므로 지운다.
+ * - 여러 thread에서 사용할 수 있다. 같은 이름을 동시에 받으면 inFlight에 먼저 넣은 thread만 저장한다.
+ *
+ * 재시작해도 상태를 유지하도록, 새로 추가한 hash를 chunk마다(update) spill 파일에 이어 쓰고 파일 길이를 ExecutionContext에 저장한다.
+ * 재시작 시 저장된 길이까지 다시 읽어 NameHashSet, NameBloomFilter를 다시 만든다. step이 COMPLETED면 파일을 지운다.
+ *
+ * step에 stream, ChunkListener, StepExecutionListener로 등록해야 한다. (CompositeItemProcessor 안에 있으면 자동으로 등록되지 않는다)
+ */
+@Slf4j
+public class DuplicateNameProcessor extends ItemStreamSupport implements ItemProcessor<Person, Person>, ChunkListener, StepExecutionListener {
+
+    private static final String SPILL_FILE = "spillFile";
+    private static final String SPILL_LENGTH = "spillLength";
+
+    private final NameHashSet hashes;
+    private final NameBloomFilter bloomFilter;      // 없으면 null
+    private final Predicate<String> existsInStore;
+    private final Path spillDirectory;
+
+    private final ConcurrentMap<String, Person> inFlight = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, Person>> accepted = ThreadLocal.withInitial(HashMap::new);
+
+    private final Object spillLock = new Object();
+    private long[] pending = new long[1_024];       // spill 파일에 아직 쓰지 않은 hash
+    private int pendingSize;
+    private Path spillFile;
+    private long spillLength;
+
+    private final LongAdder storeChecks = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    public DuplicateNameProcessor(NameHashSet hashes, NameBloomFilter bloomFilter, Predicate<String> existsInStore, Path spillDirectory) {
+        this.hashes = hashes;
+        this.bloomFilter = bloomFilter;
+        this.existsInStore = existsInStore;
+        this.spillDirectory = spillDirectory;
+        setName("duplicateNameProcessor");
+    }
+
+    @Override
+    public Person process(Person item) throws Exception {
+        String name = item.getName();
+        if (Objects.isNull(name)) {
+            return item;
+        }
+        long hash = NameHashSet.hash(name);
+
+        boolean seen = (Objects.isNull(bloomFilter) || bloomFilter.mightContain(hash)) && hashes.contains(hash);
+        if (seen) {
+            Person owner = inFlight.get(name);
+            if (Objects.isNull(owner)) {
+                storeChecks.increment();
+                if (existsInStore.test(name)) {
+                    duplicates.increment();
+                    return null;
+                }
+            } else if (owner != item) {
+                duplicates.increment();
+                return null;
+            }
+        }
+
+        Person owner = inFlight.putIfAbsent(name, item);
+        if (Objects.nonNull(owner) && owner != item) {
+            duplicates.increment();
+            return null;
+        }
+        accepted.get().put(name, item);
+
+        if (Objects.nonNull(bloomFilter)) {
+            bloomFilter.put(hash);
+        }
+        if (hashes.add(hash)) {
+            addPending(hash);
+        }
+        return item;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        releaseInFlight();
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        releaseInFlight();
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            if (executionContext.containsKey(getExecutionContextKey(SPILL_FILE))) {
+                spillFile = Paths.get(executionContext.getString(getExecutionContextKey(SPILL_FILE)));
+                spillLength = executionContext.getLong(getExecutionContextKey(SPILL_LENGTH));
+                replay();
+                return;
+            }
+
+            Files.createDirectories(spillDirectory);
+            spillFile = Files.createTempFile(spillDirectory, "dedup-", ".bin");
+            spillLength = 0;
+        } catch (IOException e) {
+            throw new ItemStreamException("중복 검사 spill 파일을 열 수 없습니다 : " + spillFile, e);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        synchronized (spillLock) {
+            if (Objects.isNull(spillFile)) {
+                return;
+            }
+            if (pendingSize > 0) {
+                ByteBuffer buffer = ByteBuffer.allocate(pendingSize * Long.BYTES);
+                for (int i = 0; i < pendingSize; i++) {
+                    buffer.putLong(pending[i]);
+                }
+                buffer.flip();
+
+                try (FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.WRITE)) {
+                    while (buffer.hasRemaining()) {
+                        spillLength += channel.write(buffer, spillLength);
+                    }
+                } catch (IOException e) {
+                    throw new ItemStreamException("중복 검사 spill 파일에 쓸 수 없습니다 : " + spillFile, e);
+                }
+                pendingSize = 0;
+            }
+
+            executionContext.putString(getExecutionContextKey(SPILL_FILE), spillFile.toString());
+            executionContext.putLong(getExecutionContextKey(SPILL_LENGTH), spillLength);
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        // 미리 잡아둔 크기를 포함한 실제 할당 크기다. (이름 수로 나누면 이름이 적을때 의미가 없다)
+        log.info("중복 검사 - 이름 {}개, 중복 {}건, db 확인 {}건, NameHashSet {}KB, Bloom filter {}KB",
+                hashes.size(), duplicates.sum(), storeChecks.sum(), hashes.memoryBytes() / 1024,
+                Objects.nonNull(bloomFilter) ? bloomFilter.memoryBytes() / 1024 : 0);
+
+        if (stepExecution.getStatus() == BatchStatus.COMPLETED && Objects.nonNull(spillFile)) {
+            try {
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                log.warn("중복 검사 spill 파일을 지울 수 없습니다 : {}", spillFile, e);
+            }
+        }
+        return null;
+    }
+
+    private void releaseInFlight() {
+        Map<String, Person> names = accepted.get();
+        names.forEach(inFlight::remove);    // 이 thread가 넣은 item일때만 지운다
+        names.clear();
+    }
+
+    private void addPending(long hash) {
+        synchronized (spillLock) {
+            if (pendingSize == pending.length) {
+                long[] bigger = new long[pending.length * 2];
+                System.arraycopy(pending, 0, bigger, 0, pendingSize);
+                pending = bigger;
+            }
+            pending[pendingSize++] = hash;
+        }
+    }
+
+    // 마지막 commit 이후에 쓴 hash는 잘라내고, 나머지로 상태를 다시 만든다.
+    private void replay() throws IOException {
+        try (FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.truncate(spillLength);
+
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long position = 0;
+            while (position < spillLength) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                int usable = read - read % Long.BYTES;
+                buffer.flip();
+                for (int i = 0; i < usable; i += Long.BYTES) {
+                    long hash = buffer.getLong(i);
+                    hashes.add(hash);
+                    if (Objects.nonNull(bloomFilter)) {
+                        bloomFilter.put(hash);
+                    }
+                }
+                position += usable;
+            }
+        }
+        log.info("중복 검사 상태 복원 : 이름 {}개 ({})", hashes.size(), spillFile);
+    }
+}
@@ -0,0 +1,224 @@
+package fastcampus.spring.batch.part3;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 여러 gzip member(블록)가 이어진 파일을 압축을 풀면서 읽는다. (GZIPInputStream과 같은 결과)
+ * 지금 읽고 있는 블록의 시작 위치(압축 파일의 offset)와 블록 안에서 읽은 byte 수를 알 수 있고,
+ * seek()으로 그 위치로 바로 돌아갈 수 있다. -> 블록 하나만 다시 풀면 된다.
+ *
+ * gzip 명령으로 만든 파일은 블록이 하나이므로 처음부터 다시 푸는 것과 같다.
+ */
+class GzipBlockInputStream extends InputStream {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final FileChannel channel;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] in = new byte[DecompressingResource.BUFFER_SIZE];
+    private long inBase;            // in[0]의 파일 offset
+    private int inPos;
+    private int inLimit;
+
+    private final byte[] out = new byte[DecompressingResource.BUFFER_SIZE];
+    private int outPos;
+    private int outLimit;
+
+    private boolean inBlock;
+    private long blockOffset;       // 지금 블록의 시작 offset
+    private long blockPosition;     // 지금 블록에서 읽은 byte 수
+    private long blockSize;         // 지금 블록에서 풀어놓은 byte 수
+
+    GzipBlockInputStream(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * offset에서 시작하는 블록으로 이동한 뒤, 압축을 푼 skip byte를 건너뛴다.
+     */
+    void seek(long offset, long skip) throws IOException {
+        inBase = offset;
+        inPos = inLimit = 0;
+        outPos = outLimit = 0;
+        inBlock = false;
+        blockOffset = offset;
+        blockPosition = 0;
+        blockSize = 0;
+
+        while (skip > 0) {
+            if (outPos == outLimit && !fillOut()) {
+                throw new EOFException("블록의 크기보다 많이 건너뛸 수 없습니다.");
+            }
+            int n = (int) Math.min(skip, outLimit - outPos);
+            outPos += n;
+            blockPosition += n;
+            skip -= n;
+        }
+    }
+
+    /**
+     * 다음에 읽을 byte의 위치 : [블록 시작 offset, 블록 안의 위치]
+     * 블록을 다 읽었으면 다음 블록의 시작을 반환한다.
+     */
+    long[] position() {
+        if (!inBlock && outPos == outLimit && blockPosition == blockSize) {
+            return new long[]{inBase + inPos, 0};
+        }
+        return new long[]{blockOffset, blockPosition};
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (outPos == outLimit && !fillOut()) {
+            return -1;
+        }
+        blockPosition++;
+        return out[outPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (outPos == outLimit && !fillOut()) {
+            return -1;
+        }
+        int n = Math.min(len, outLimit - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        blockPosition += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private boolean fillOut() throws IOException {
+        while (outPos == outLimit) {
+            if (!inBlock && !startBlock()) {
+                return false;
+            }
+
+            if (inflater.needsInput()) {
+                if (inPos == inLimit && !fillIn()) {
+                    throw new EOFException("gzip 블록이 끝나기 전에 파일이 끝났습니다.");
+                }
+                inflater.setInput(in, inPos, inLimit - inPos);
+            }
+
+            int n;
+            try {
+                n = inflater.inflate(out, 0, out.length);
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+            inPos = inLimit - inflater.getRemaining();
+            crc.update(out, 0, n);
+            outPos = 0;
+            outLimit = n;
+            blockSize += n;
+
+            if (inflater.finished()) {
+                endBlock();
+            } else if (n == 0 && inflater.needsDictionary()) {
+                throw new ZipException("dictionary가 필요한 deflate 형식은 지원하지 않습니다.");
+            }
+        }
+        return true;
+    }
+
+    // gzip header를 읽는다. 파일 끝이면 false
+    private boolean startBlock() throws IOException {
+        if (inPos == inLimit && !fillIn()) {
+            return false;
+        }
+
+        blockOffset = inBase + inPos;
+        blockPosition = 0;
+        blockSize = 0;
+
+        if (readByte() != 0x1f || readByte() != 0x8b) {
+            throw new ZipException("gzip 형식이 아닙니다. (offset : " + blockOffset + ")");
+        }
+        if (readByte() != 8) {
+            throw new ZipException("deflate 압축만 지원합니다.");
+        }
+        int flags = readByte();
+        skip(6);                                    // mtime, xfl, os
+        if ((flags & FEXTRA) != 0) {
+            skip(readByte() | (readByte() << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) {
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) {
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+
+        inflater.reset();
+        crc.reset();
+        inBlock = true;
+        return true;
+    }
+
+    // gzip trailer(crc32, 크기)를 확인한다.
+    private void endBlock() throws IOException {
+        long expectedCrc = readInt();
+        long expectedSize = readInt();
+        if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("gzip 블록이 손상되었습니다. (offset : " + blockOffset + ")");
+        }
+        inBlock = false;
+    }
+
+    private long readInt() throws IOException {
+        return (readByte() | (readByte() << 8) | (readByte() << 16) | ((long) readByte() << 24)) & 0xffffffffL;
+    }
+
+    private void skip(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readByte();
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (inPos == inLimit && !fillIn()) {
+            throw new EOFException("gzip 블록이 끝나기 전에 파일이 끝났습니다.");
+        }
+        return in[inPos++] & 0xff;
+    }
+
+    private boolean fillIn() throws IOException {
+        inBase += inLimit;
+        inPos = inLimit = 0;
+
+        int n = channel.read(ByteBuffer.wrap(in), inBase);
+        if (n <= 0) {
+            return false;
+        }
+        inLimit = n;
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+package fastcampus.spring.batch.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * gzip으로 압축된 csv를 한 줄씩 읽는 reader. (FlatFileItemReader + DecompressingResource와 같은 결과)
+ * 다음 줄의 위치를 [gzip 블록의 시작 offset, 블록 안의 위치]로 ExecutionContext에 저장한다.
+ * 재시작 시 FlatFileItemReader처럼 처음부터 다시 풀면서 줄을 건너뛰지 않고, 그 블록으로 바로 가서 블록 하나만 다시 푼다.
+ * -> GzipFlatFileItemWriter처럼 chunk마다 블록을 나눠 쓴 파일(블록 압축)에서 효과가 있다.
+ */
+public class GzipBlockItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T> {
+
+    private static final String BLOCK_OFFSET = "blockOffset";
+    private static final String BLOCK_POSITION = "blockPosition";
+    private static final String LINE_COUNT = "lineCount";
+
+    private final Path path;
+    private final LineMapper<T> lineMapper;
+    private final int linesToSkip;
+
+    private GzipBlockInputStream input;
+    private long[] position;        // 다음 줄의 시작
+    private int lineCount;
+    private byte[] line = new byte[256];
+
+    public GzipBlockItemReader(Path path, LineMapper<T> lineMapper, int linesToSkip) {
+        this.path = path;
+        this.lineMapper = lineMapper;
+        this.linesToSkip = linesToSkip;
+    }
+
+    @Override
+    public T read() throws Exception {
+        String text = readLine();
+        if (Objects.isNull(text)) {
+            return null;
+        }
+
+        try {
+            return lineMapper.mapLine(text, lineCount);
+        } catch (Exception e) {
+            throw new FlatFileParseException("Parsing error at line: " + lineCount + " in resource=[" + path + "], input=[" + text + "]",
+                    e, text, lineCount);
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            input = new GzipBlockInputStream(FileChannel.open(path, StandardOpenOption.READ));
+
+            if (executionContext.containsKey(getExecutionContextKey(BLOCK_OFFSET))) {
+                // 재시작이면 저장된 블록으로 바로 이동한다.
+                input.seek(executionContext.getLong(getExecutionContextKey(BLOCK_OFFSET)),
+                        executionContext.getLong(getExecutionContextKey(BLOCK_POSITION)));
+                lineCount = executionContext.getInt(getExecutionContextKey(LINE_COUNT));
+                position = input.position();
+            } else {
+                input.seek(0, 0);
+                lineCount = 0;
+                for (int i = 0; i < linesToSkip; i++) {
+                    readLine();
+                }
+                position = input.position();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 열 수 없습니다 : " + path, e);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (Objects.nonNull(position)) {
+            executionContext.putLong(getExecutionContextKey(BLOCK_OFFSET), position[0]);
+            executionContext.putLong(getExecutionContextKey(BLOCK_POSITION), position[1]);
+            executionContext.putInt(getExecutionContextKey(LINE_COUNT), lineCount);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            if (Objects.nonNull(input)) {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 닫을 수 없습니다 : " + path, e);
+        } finally {
+            input = null;
+            position = null;
+        }
+    }
+
+    // '\n' 또는 '\r\n'으로 끝나는 한 줄, 파일 끝이면 null
+    private String readLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = input.read()) != -1 && b != '\n') {
+            if (length == line.length) {
+                byte[] bigger = new byte[line.length * 2];
+                System.arraycopy(line, 0, bigger, 0, length);
+                line = bigger;
+            }
+            line[length++] = (byte) b;
+        }
+        if (b == -1 && length == 0) {
+            return null;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+
+        lineCount++;
+        position = input.position();
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,204 @@
+package fastcampus.spring.batch.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileFooterCallback;
+import org.springframework.batch.item.file.FlatFileHeaderCallback;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * FlatFileItemWriter와 같은 내용을 gzip으로 압축해서 쓴다. (압축을 풀면 FlatFileItemWriter의 결과와 같다)
+ * chunk(write() 한번)마다 gzip 블록(member) 하나를 쓴다. 블록이 이어진 파일도 gzip, GZIPInputStream으로 한번에 풀린다.
+ * - FlatFileItemWriter(transactional=true)처럼 트랜잭션 안에서는 압축한 블록을 메모리에 모아두고 commit 직전(beforeCommit)에 파일에 쓴다.
+ *   rollback 된 chunk의 블록은 버리므로, retry/skip으로 다시 쓰는 chunk가 파일에 두번 들어가지 않는다.
+ * - 마지막으로 commit한 블록의 끝 위치를 ExecutionContext에 저장하고, 재시작 시 그 위치 뒤를 잘라내고 이어서 쓴다.
+ * - GzipBlockItemReader는 블록 단위로 재시작할 수 있다.
+ * 헤더는 블록 하나로, footer는 close()에서 블록 하나로 쓴다.
+ */
+public class GzipFlatFileItemWriter<T> extends ItemStreamSupport implements ItemStreamWriter<T> {
+
+    private static final String POSITION = "position";
+    private static final String WRITTEN = "written";
+
+    private final Path path;
+    private final LineAggregator<T> lineAggregator;
+    private final String lineSeparator = System.lineSeparator();
+
+    private FlatFileHeaderCallback headerCallback;
+    private FlatFileFooterCallback footerCallback;
+    private boolean append = false;
+
+    private FileChannel channel;
+    private long written;
+
+    // 아직 commit 되지 않은 chunk의 블록과 item 수
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long pendingWritten;
+    private boolean synchronizationRegistered;
+
+    public GzipFlatFileItemWriter(Path path, LineAggregator<T> lineAggregator) {
+        this.path = path;
+        this.lineAggregator = lineAggregator;
+    }
+
+    public void setHeaderCallback(FlatFileHeaderCallback headerCallback) {
+        this.headerCallback = headerCallback;
+    }
+
+    public void setFooterCallback(FlatFileFooterCallback footerCallback) {
+        this.footerCallback = footerCallback;
+    }
+
+    // true면 이미 있는 파일 뒤에 블록을 이어서 쓴다. (헤더는 새 파일일때만 쓴다)
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for (T item : items) {
+            lines.append(lineAggregator.aggregate(item)).append(lineSeparator);
+        }
+        byte[] block = compress(lines.toString());
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            writeFully(block);
+            written += items.size();
+            return;
+        }
+        if (!synchronizationRegistered) {
+            TransactionSynchronizationManager.registerSynchronization(new PendingBlockSynchronization());
+            synchronizationRegistered = true;
+        }
+        pending.write(block);
+        pendingWritten += items.size();
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            if (Objects.nonNull(path.getParent())) {
+                Files.createDirectories(path.getParent());
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+            if (executionContext.containsKey(getExecutionContextKey(POSITION))) {
+                // 재시작이면 commit 되지 않은 블록을 잘라낸다.
+                long position = executionContext.getLong(getExecutionContextKey(POSITION));
+                channel.truncate(position);
+                channel.position(position);
+                written = executionContext.getLong(getExecutionContextKey(WRITTEN));
+                return;
+            }
+
+            if (append) {
+                channel.position(channel.size());
+            } else {
+                channel.truncate(0);
+            }
+            written = 0;
+
+            if (Objects.nonNull(headerCallback) && channel.position() == 0) {
+                StringWriter header = new StringWriter();
+                headerCallback.writeHeader(header);
+                writeBlock(header.append(lineSeparator).toString());
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 열 수 없습니다 : " + path, e);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (Objects.isNull(channel)) {
+            return;
+        }
+        try {
+            // update()는 commit 전에 호출되므로, commit 때 쓸 블록까지 포함한 위치를 저장한다. (FlatFileItemWriter와 같다)
+            executionContext.putLong(getExecutionContextKey(POSITION), channel.position() + pending.size());
+            executionContext.putLong(getExecutionContextKey(WRITTEN), written + pendingWritten);
+        } catch (IOException e) {
+            throw new ItemStreamException("파일 위치를 알 수 없습니다 : " + path, e);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (Objects.isNull(channel)) {
+            return;
+        }
+        try {
+            if (Objects.nonNull(footerCallback)) {
+                StringWriter footer = new StringWriter();
+                footerCallback.writeFooter(footer);
+                writeBlock(footer.toString());
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 닫을 수 없습니다 : " + path, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void writeBlock(String text) throws IOException {
+        if (text.isEmpty()) {
+            return;
+        }
+        writeFully(compress(text));
+    }
+
+    private byte[] compress(String text) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        // GZIPOutputStream을 닫아야 Deflater가 해제된다.
+        try (GZIPOutputStream gzip = new GZIPOutputStream(block, DecompressingResource.BUFFER_SIZE)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return block.toByteArray();
+    }
+
+    private void writeFully(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private class PendingBlockSynchronization implements TransactionSynchronization {
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            try {
+                writeFully(pending.toByteArray());
+                written += pendingWritten;
+            } catch (IOException e) {
+                throw new ItemStreamException("파일에 쓸 수 없습니다 : " + path, e);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            pending.reset();
+            pendingWritten = 0;
+            synchronizationRegistered = false;
+        }
+    }
+}
@@ -5,7 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
@@ -16,12 +18,21 @@ import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
 import org.springframework.batch.item.file.mapping.DefaultLineMapper;
 import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.StringUtils;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -35,6 +46,9 @@ public class ItemReaderConfiguration {
     private final StepBuilderFactory stepBuilderFactory;
     private final DataSource dataSource;
     private final EntityManagerFactory entityManagerFactory;
+    private final TaskExecutor taskExecutor;
+
+    private final int GRID_SIZE = 4;
 
     @Bean
     public Job itemReaderJob() throws Exception {
@@ -47,6 +61,19 @@ public class ItemReaderConfiguration {
                 .build();
     }
 
+    /**
+     * csvFileStep과 같은 형식의 csv 파일을 MappedPersonCsvItemReader로 나눠 읽는 job
+     * 실행 : --job.name=mappedCsvFileJob csvFile=/path/to/person.csv
+     * csvFile이 없으면 classpath의 test.csv를 임시 파일로 복사해서 읽는다.
+     */
+    @Bean
+    public Job mappedCsvFileJob() throws Exception {
+        return jobBuilderFactory.get("mappedCsvFileJob")
+                .incrementer(new RunIdIncrementer())
+                .start(mappedCsvFileStep(null))
+                .build();
+    }
+
     @Bean
     public Step customItemReaderStep() {
         return stepBuilderFactory.get("customItemReaderStep")
@@ -83,6 +110,54 @@ public class ItemReaderConfiguration {
                 .build();
     }
 
+    /**
+     * csvFileStep과 같은 파일을 줄 경계의 byte 범위로 나눠 taskExecutor에서 동시에 읽는다.
+     * 범위마다 MappedPersonCsvItemReader가 memory map 해서 읽는다.
+     */
+    @Bean
+    @JobScope
+    public Step mappedCsvFileStep(@Value("#{jobParameters[csvFile]}") String csvFile) throws Exception {
+        return stepBuilderFactory.get("mappedCsvFileStep")
+                .partitioner("mappedCsvFileWorkerStep", new PersonCsvBytePartitioner(csvFile(csvFile)))
+                .step(mappedCsvFileWorkerStep())
+                .taskExecutor(taskExecutor)
+                .gridSize(GRID_SIZE)
+                .build();
+    }
+
+    @Bean
+    public Step mappedCsvFileWorkerStep() {
+        return stepBuilderFactory.get("mappedCsvFileWorkerStep")
+                .<Person, Person>chunk(10)
+                .reader(mappedCsvFileItemReader(null, null, null))
+                .writer(itemWriter())
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public MappedPersonCsvItemReader mappedCsvFileItemReader(@Value("#{stepExecutionContext[file]}") String file,
+                                                             @Value("#{stepExecutionContext[startOffset]}") Long startOffset,
+                                                             @Value("#{stepExecutionContext[endOffset]}") Long endOffset) {
+        MappedPersonCsvItemReader itemReader = new MappedPersonCsvItemReader(Paths.get(file), startOffset, endOffset, true);
+        itemReader.setName("mappedCsvFileItemReader");      // 범위마다 step이 달라서 ExecutionContext 키가 겹치지 않는다
+        return itemReader;
+    }
+
+    // memory map은 파일 시스템의 파일만 가능하다. (jar 안의 resource는 안된다) -> resource는 임시 파일로 복사한다.
+    private Path csvFile(String csvFile) throws IOException {
+        if (StringUtils.hasText(csvFile)) {
+            return Paths.get(csvFile);
+        }
+
+        Path copied = Files.createTempFile("mappedCsvFile", ".csv");
+        copied.toFile().deleteOnExit();
+        try (InputStream inputStream = new DecompressingResource(new ClassPathResource("test.csv")).getInputStream()) {
+            Files.copy(inputStream, copied, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return copied;
+    }
+
     private JpaCursorItemReader<Person> jpaCursorItemReader() throws Exception {
         JpaCursorItemReader<Person> itemReader = new JpaCursorItemReaderBuilder<Person>()
                 .name("personJpaCursorItemReader")
@@ -128,7 +203,7 @@ public class ItemReaderConfiguration {
         FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
                 .name("csvFileItemReader")                      // 이름
                 .encoding("UTF-8")                              // 인코딩 타입
-                .resource(new ClassPathResource("test.csv"))    // resource
+                .resource(new DecompressingResource(new ClassPathResource("test.csv")))    // resource
                 .linesToSkip(1)                                 // csv파일의 맨 첫 줄(keys) skip
                 .lineMapper(lineMapper)                         // lineMapper
                 .build();
@@ -24,6 +24,7 @@ import org.springframework.core.io.FileSystemResource;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -48,6 +49,18 @@ public class ItemWriterConfiguration {
                 .build();
     }
 
+    /**
+     * csvItemWriterStep과 같은 내용을 gzip 블록으로 압축해서 쓰는 job
+     * 실행 : --job.name=csvGzipItemWriterJob
+     */
+    @Bean
+    public Job csvGzipItemWriterJob() throws Exception {
+        return jobBuilderFactory.get("csvGzipItemWriterJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.csvGzipItemWriterStep())
+                .build();
+    }
+
     @Bean
     public Step csvItemWriterStep() throws Exception {
         return stepBuilderFactory.get("csvItemWriterStep")
@@ -57,6 +70,15 @@ public class ItemWriterConfiguration {
                 .build();
     }
 
+    @Bean
+    public Step csvGzipItemWriterStep() throws Exception {
+        return stepBuilderFactory.get("csvGzipItemWriterStep")
+                .<Person, Person>chunk (10)
+                .reader(itemReader())
+                .writer(csvGzipFileItemWriter())
+                .build();
+    }
+
     @Bean
     public Step jdbcBatchItemWriterStep() {
         return stepBuilderFactory.get("jdbcBatchItemWriterStep")
@@ -104,20 +126,11 @@ public class ItemWriterConfiguration {
     }
 
     private ItemWriter<Person> csvFileItemWriter() throws Exception {
-
-        // 객체 -> 필드 맵핑을 위한 설정
-        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"id", "name", "age", "address"});              // 이 순서로 값을 write
-
-        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");   // csv이기때문에 comma seperated
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<Person> itemWriter = new FlatFileItemWriterBuilder<Person>()
                 .name("csvFileItemWriter")
                 .encoding("UTF-8")
                 .resource(new FileSystemResource("output/test-output.csv"))       // Reader에서는 ClassPathResource로 설정함
-                .lineAggregator(lineAggregator)                                         // 맵핑 설정
+                .lineAggregator(lineAggregator())                                       // 맵핑 설정
                 .headerCallback(writer -> writer.write("id, 이름, 나이, 거주지"))        // 헤더 설정
                 .footerCallback(writer -> writer.write("==================\n"))     // footer 설정
                 .append(true)                                                           // append true를 해주면 중복된 파일명으로 생성 시 뒤에 계속 붙여준다.
@@ -127,6 +140,29 @@ public class ItemWriterConfiguration {
         return itemWriter;
     }
 
+    // csvFileItemWriter와 같은 내용을 gzip으로 압축해서 쓴다. chunk마다 gzip 블록 하나
+    private ItemWriter<Person> csvGzipFileItemWriter() {
+        GzipFlatFileItemWriter<Person> itemWriter = new GzipFlatFileItemWriter<>(Paths.get("output/test-output.csv.gz"), lineAggregator());
+        itemWriter.setName("csvGzipFileItemWriter");
+        itemWriter.setHeaderCallback(writer -> writer.write("id, 이름, 나이, 거주지"));
+        itemWriter.setFooterCallback(writer -> writer.write("==================\n"));
+        itemWriter.setAppend(true);
+
+        return itemWriter;
+    }
+
+    private DelimitedLineAggregator<Person> lineAggregator() {
+        // 객체 -> 필드 맵핑을 위한 설정
+        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(new String[]{"id", "name", "age", "address"});              // 이 순서로 값을 write
+
+        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
+        lineAggregator.setDelimiter(",");   // csv이기때문에 comma seperated
+        lineAggregator.setFieldExtractor(fieldExtractor);
+
+        return lineAggregator;
+    }
+
     private ItemReader<Person> itemReader() {
         return new CustomItemReader<Person>(getItems());
     }
@@ -0,0 +1,189 @@
+package fastcampus.spring.batch.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * id,이름,나이,주소 형식의 csv를 읽는 reader. (test.csv)
+ * FlatFileItemReader + DefaultLineMapper는 한 줄마다 String, FieldSet(String[])을 만들고 이름으로 값을 찾는다.
+ * 이 reader는 파일의 [startOffset, endOffset) 범위를 memory map 하고, buffer에서 바로 Person을 만든다.
+ * - 줄 String, FieldSet을 만들지 않는다. id는 byte에서 바로 숫자로 바꾸고, 문자열 컬럼만 String으로 만든다.
+ * - 범위는 줄의 시작이어야 한다. (PersonCsvBytePartitioner가 줄 경계로 나눈다) -> 범위마다 다른 thread에서 읽을 수 있다.
+ * - 다음에 읽을 byte 위치를 ExecutionContext에 저장하므로, 재시작 시 그 위치부터 다시 읽는다.
+ *
+ * 값은 DelimitedLineTokenizer와 같이 앞뒤 공백을 제거한다. 따옴표로 감싼 컬럼은 지원하지 않는다.
+ * 하나의 범위는 2GB(한번에 map 할 수 있는 크기)보다 작아야 한다.
+ */
+public class MappedPersonCsvItemReader extends ItemStreamSupport implements ItemStreamReader<Person> {
+
+    private static final String POSITION = "position";
+    private static final int COLUMN_COUNT = 4;
+
+    private final Path path;
+    private final long startOffset;
+    private final long endOffset;
+    private final boolean skipHeader;
+
+    private MappedByteBuffer buffer;
+    private int cursor;                     // 다음에 읽을 줄의 시작 (범위 내 위치)
+    private byte[] scratch = new byte[256]; // 문자열 컬럼을 String으로 만들때 사용
+    private final int[] columnEnds = new int[COLUMN_COUNT];
+
+    /**
+     * @param skipHeader : 범위가 파일의 처음(0)일때 첫 줄을 건너뛴다.
+     */
+    public MappedPersonCsvItemReader(Path path, long startOffset, long endOffset, boolean skipHeader) {
+        this.path = path;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.skipHeader = skipHeader;
+    }
+
+    @Override
+    public Person read() throws Exception {
+        int limit = buffer.limit();
+
+        // 빈 줄은 건너뛴다.
+        while (cursor < limit && (buffer.get(cursor) == '\n' || buffer.get(cursor) == '\r')) {
+            cursor++;
+        }
+        if (cursor >= limit) {
+            return null;
+        }
+
+        int lineStart = cursor;
+        int lineEnd = lineStart;
+        int column = 0;
+        while (lineEnd < limit) {
+            byte b = buffer.get(lineEnd);
+            if (b == '\n') {
+                break;
+            }
+            if (b == ',') {
+                if (column == COLUMN_COUNT - 1) {
+                    throw parseException("컬럼 수가 " + COLUMN_COUNT + "개보다 많습니다.", lineStart, lineEnd);
+                }
+                columnEnds[column++] = lineEnd;
+            }
+            lineEnd++;
+        }
+        cursor = lineEnd + 1;
+
+        int contentEnd = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+        if (column != COLUMN_COUNT - 1) {
+            throw parseException("컬럼 수가 " + COLUMN_COUNT + "개가 아닙니다.", lineStart, contentEnd);
+        }
+        columnEnds[column] = contentEnd;
+
+        int id = parseInt(lineStart, columnEnds[0], lineStart, contentEnd);
+        String name = string(columnEnds[0] + 1, columnEnds[1]);
+        String age = string(columnEnds[1] + 1, columnEnds[2]);
+        String address = string(columnEnds[2] + 1, columnEnds[3]);
+
+        return new Person(id, name, age, address);
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // channel을 닫아도 map한 buffer는 유효하다.
+            long end = Math.min(endOffset, channel.size());
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, startOffset, Math.max(0, end - startOffset));
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 열 수 없습니다 : " + path, e);
+        }
+
+        cursor = 0;
+        if (executionContext.containsKey(getExecutionContextKey(POSITION))) {
+            // 재시작이면 저장된 위치부터 읽는다.
+            cursor = (int) (executionContext.getLong(getExecutionContextKey(POSITION)) - startOffset);
+        } else if (skipHeader && startOffset == 0) {
+            while (cursor < buffer.limit() && buffer.get(cursor++) != '\n') {
+            }
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (Objects.nonNull(buffer)) {
+            executionContext.putLong(getExecutionContextKey(POSITION), startOffset + cursor);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        // java 8에는 unmap api가 없어서, 참조를 끊고 gc가 해제하게 한다.
+        buffer = null;
+    }
+
+    private int parseInt(int from, int to, int lineStart, int lineEnd) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) == ' ') {
+            to--;
+        }
+
+        boolean negative = from < to && buffer.get(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i >= to) {
+            throw parseException("id가 숫자가 아닙니다.", lineStart, lineEnd);
+        }
+
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || (value = value * 10 + digit) > Integer.MAX_VALUE + 1L) {
+                throw parseException("id가 숫자가 아닙니다.", lineStart, lineEnd);
+            }
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw parseException("id가 숫자가 아닙니다.", lineStart, lineEnd);
+        }
+        return (int) value;
+    }
+
+    private String string(int from, int to) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) == ' ') {
+            to--;
+        }
+
+        int length = to - from;
+        if (length == 0) {
+            return "";
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.position(from);
+        buffer.get(scratch, 0, length);
+
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // 오류가 난 줄만 String으로 만든다.
+    private FlatFileParseException parseException(String message, int lineStart, int lineEnd) {
+        byte[] line = new byte[lineEnd - lineStart];
+        buffer.position(lineStart);
+        buffer.get(line);
+
+        return new FlatFileParseException(message + " (offset : " + (startOffset + lineStart) + ")",
+                new String(line, StandardCharsets.UTF_8));
+    }
+}
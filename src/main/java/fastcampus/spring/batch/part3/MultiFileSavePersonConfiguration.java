@@ -0,0 +1,153 @@
+package fastcampus.spring.batch.part3;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.support.MultiResourcePartitioner;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * 여러 개의 csv 파일(id,이름,나이,주소)을 파일 하나당 partition 하나로 나눠 taskExecutor에서 동시에 저장한다.
+ * - 파일마다 step execution이 따로 있으므로, 재시작하면 끝나지 않은 파일만 다시 실행한다. (끝난 partition은 COMPLETED라 건너뛴다)
+ * - 파일 안에서는 FlatFileItemReader가 읽은 줄 수를 저장하므로 마지막 commit 이후부터 다시 읽는다.
+ * - 동시에 실행되는 partition 수는 taskExecutor의 thread 수이다. connection pool 크기보다 크게 잡지 않는다.
+ *
+ * 이름이 없으면 UNKOWN으로 저장한다. (savePersonStep의 PersonValidationRetryProcessor가 recovery 하는 결과와 같다)
+ * 중복 이름은 거르지 않는다. (allow_duplicate=true 와 같다)
+ * jobParameters
+ *  - input_files : 읽을 파일 pattern (ex. file:input/person-*.csv), 없으면 classpath:test.csv
+ *  - dedup : db 이면 중복 이름을 db(unique index)에서 거른다. (PersonUpsertItemWriter) 여러 partition이 같은 이름을 동시에 넣어도 하나만 저장된다.
+ *            name_key로만 비교하므로, name_key가 없는(null) 기존 row의 이름은 중복으로 보지 않는다.
+ *
+ * 실행 : --job.name=multiFileSavePersonJob input_files=file:input/person-*.csv
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class MultiFileSavePersonConfiguration {
+
+    private final String JOB_NAME = "multiFileSavePersonJob";
+    private final String DEFAULT_INPUT_FILES = "classpath:test.csv";
+    private final int CHUNK_SIZE = 1_000;
+
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final DataSource dataSource;
+    private final TaskExecutor taskExecutor;
+
+    @Bean(JOB_NAME)
+    public Job multiFileSavePersonJob() throws Exception {
+        return jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(savePersonManagerStep(null))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_savePersonStep.manager")
+    @JobScope
+    public Step savePersonManagerStep(@Value("#{jobParameters[input_files]}") String inputFiles) throws Exception {
+        return stepBuilderFactory.get(JOB_NAME + "_savePersonStep.manager")
+                .partitioner(JOB_NAME + "_savePersonStep", partitioner(Objects.isNull(inputFiles) ? DEFAULT_INPUT_FILES : inputFiles))
+                .step(savePersonStep())
+                .taskExecutor(taskExecutor)
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_savePersonStep")
+    public Step savePersonStep() throws Exception {
+        return stepBuilderFactory.get(JOB_NAME + "_savePersonStep")
+                .<Person, Person>chunk(CHUNK_SIZE)
+                .reader(csvFileItemReader(null))
+                .processor(itemProcessor())
+                .writer(itemWriter(null))
+                .faultTolerant()
+                .retry(DeadlockLoserDataAccessException.class)      // dedup=db 에서 mysql deadlock이 나면 chunk를 rollback 하고 다시 쓴다.
+                .retryLimit(3)
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_csvFileItemReader")
+    @StepScope
+    public FlatFileItemReader<Person> csvFileItemReader(@Value("#{stepExecutionContext[fileName]}") Resource resource) throws Exception {
+        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
+        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+
+        tokenizer.setNames("id", "name", "age", "address");
+        lineMapper.setLineTokenizer(tokenizer);
+
+        lineMapper.setFieldSetMapper(fieldSet -> new Person(
+                fieldSet.readInt("id"),
+                fieldSet.readString("name"),
+                fieldSet.readString("age"),
+                fieldSet.readString("address")));
+
+        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
+                .name("csvFileItemReader")          // partition 마다 step이 달라서 ExecutionContext 키가 겹치지 않는다
+                .encoding("UTF-8")
+                .resource(new DecompressingResource(resource))  // gzip 파일이면 압축을 풀면서 읽는다
+                .linesToSkip(1)
+                .lineMapper(lineMapper)
+                .build();
+
+        itemReader.afterPropertiesSet();
+        return itemReader;
+    }
+
+    // 파일 하나당 partition 하나, 파일 이름 순서로 partition 이름(partition0, partition1 ...)을 붙인다.
+    private MultiResourcePartitioner partitioner(String inputFiles) throws Exception {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(inputFiles);
+        Arrays.sort(resources, Comparator.comparing(Resource::getDescription));
+        log.info("{} : {}개 파일", inputFiles, resources.length);
+
+        MultiResourcePartitioner partitioner = new MultiResourcePartitioner();
+        partitioner.setResources(resources);
+        return partitioner;
+    }
+
+    private ItemProcessor<Person, Person> itemProcessor() {
+        return item -> item.isNotEmptyName() ? item : item.unknown();
+    }
+
+    // JpaItemWriter(merge)와 달리 insert 전에 select 하지 않고, chunk를 batch insert 한다.
+    @Bean(JOB_NAME + "_itemWriter")
+    @StepScope
+    public ItemWriter<Person> itemWriter(@Value("#{jobParameters[dedup]}") String dedup) throws Exception {
+        if ("db".equals(dedup)) {
+            return new PersonUpsertItemWriter(dataSource, CHUNK_SIZE);
+        }
+
+        JdbcBatchItemWriter<Person> itemWriter = new JdbcBatchItemWriterBuilder<Person>()
+                .dataSource(dataSource)
+                .sql("insert into person (name, age, address) values (:name, :age, :address)")
+                .beanMapped()
+                .build();
+        itemWriter.afterPropertiesSet();
+
+        return itemWriter;
+    }
+}
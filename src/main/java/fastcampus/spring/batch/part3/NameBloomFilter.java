@@ -0,0 +1,59 @@
+package fastcampus.spring.batch.part3;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * NameHashSet 앞에 두는 Bloom filter. mightContain()이 false면 처음 보는 이름이라 NameHashSet을 찾지 않아도 된다.
+ * 크기는 처음에 정한 expectedInsertions, fpp(오탐 확률)로 고정된다. 더 많이 넣으면 오탐이 늘어난다.
+ * bit 배열은 AtomicLongArray라 여러 thread에서 같이 사용할 수 있다.
+ */
+public class NameBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitMask;
+    private final int hashCount;
+
+    public NameBloomFilter(long expectedInsertions, double fpp) {
+        long bitCount = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        bitCount = Long.highestOneBit(Math.max(64, bitCount) - 1) << 1;      // 2의 제곱수로 올린다
+
+        this.bits = new AtomicLongArray((int) (bitCount >>> 6));
+        this.bitMask = bitCount - 1;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * @param hash NameHashSet.hash(name)
+     */
+    public void put(long hash) {
+        long h2 = secondHash(hash);
+        for (int i = 0; i < hashCount; i++) {
+            long index = (hash + i * h2) & bitMask;
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+
+            long current;
+            while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+            }
+        }
+    }
+
+    public boolean mightContain(long hash) {
+        long h2 = secondHash(hash);
+        for (int i = 0; i < hashCount; i++) {
+            long index = (hash + i * h2) & bitMask;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long memoryBytes() {
+        return (long) bits.length() * Long.BYTES;
+    }
+
+    private static long secondHash(long hash) {
+        return Long.rotateLeft(hash * 0x9e3779b97f4a7c15L, 31) | 1;
+    }
+}
@@ -0,0 +1,134 @@
+package fastcampus.spring.batch.part3;
+
+/**
+ * 이름 대신 이름의 64bit hash를 저장하는 set. (open addressing, linear probing)
+ * HashSet<String>은 이름마다 String, HashMap.Node를 가지지만, 이 set은 long 하나(8 byte / load factor)만 가진다.
+ * segment로 나눠서 segment마다 lock을 잡는다. -> 여러 thread에서 같이 사용할 수 있다.
+ *
+ * hash가 같은 다른 이름이 있을 수 있으므로(확률은 매우 낮다), contains()가 true면 '이미 봤을 수 있다'는 뜻이다.
+ * 0은 빈 칸을 뜻하므로 hash()는 0을 반환하지 않는다.
+ */
+public class NameHashSet {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public NameHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / SEGMENT_COUNT / LOAD_FACTOR)) - 1) << 1;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    // FNV-1a 64bit + murmur3 finalizer
+    public static long hash(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h ^= name.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * @return 새로 추가했으면 true, 이미 있으면 false
+     */
+    public boolean add(long hash) {
+        return segmentFor(hash).add(hash);
+    }
+
+    public boolean contains(long hash) {
+        return segmentFor(hash).contains(hash);
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    // hash table이 차지하는 heap (byte)
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.memoryBytes();
+        }
+        return bytes;
+    }
+
+    // 상위 bit로 segment를, 하위 bit로 칸을 정한다.
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static final class Segment {
+        private long[] table;
+        private int size;
+
+        private Segment(int capacity) {
+            this.table = new long[capacity];
+        }
+
+        private synchronized boolean add(long hash) {
+            if (size + 1 > table.length * LOAD_FACTOR) {
+                resize();
+            }
+            if (!insert(table, hash)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private synchronized boolean contains(long hash) {
+            int mask = table.length - 1;
+            for (int i = (int) hash & mask; table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == hash) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized long memoryBytes() {
+            return (long) table.length * Long.BYTES;
+        }
+
+        private void resize() {
+            long[] bigger = new long[table.length * 2];
+            for (long hash : table) {
+                if (hash != 0) {
+                    insert(bigger, hash);
+                }
+            }
+            table = bigger;
+        }
+
+        private static boolean insert(long[] table, long hash) {
+            int mask = table.length - 1;
+            int i = (int) hash & mask;
+            for (; table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == hash) {
+                    return false;
+                }
+            }
+            table[i] = hash;
+            return true;
+        }
+    }
+}
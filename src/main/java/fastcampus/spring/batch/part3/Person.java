@@ -1,19 +1,21 @@
 package fastcampus.spring.batch.part3;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.util.Objects;
 
 @Getter
 @Entity
 @NoArgsConstructor
-@AllArgsConstructor
+@Table(indexes = @Index(name = "idx_person_name", columnList = "name"))   // DuplicateNameProcessor가 hash가 겹칠때 이름으로 db를 확인한다
 public class Person {
 
     @Id
@@ -23,6 +25,17 @@ public class Person {
     private String age;
     private String address;
 
+    // db에서 중복 이름을 거를때(PersonUpsertItemWriter)만 name을 넣는다. null은 unique index에서 중복으로 보지 않으므로 다른 job은 영향이 없다.
+    @Column(unique = true)
+    private String nameKey;
+
+    public Person(int id, String name, String age, String address) {
+        this.id = id;
+        this.name = name;
+        this.age = age;
+        this.address = address;
+    }
+
     public Person(String name, String age, String address) {
         this(0, name, age, address);
     }
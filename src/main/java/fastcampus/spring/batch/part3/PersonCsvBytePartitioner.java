@@ -0,0 +1,85 @@
+package fastcampus.spring.batch.part3;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 파일을 gridSize 개의 byte 범위로 나눈다. 범위의 시작은 항상 줄의 시작이 되도록 다음 줄바꿈 뒤로 옮긴다.
+ * 범위 하나가 MAX_RANGE_SIZE 보다 크면 gridSize 보다 많이 나눈다. (MappedPersonCsvItemReader는 범위 전체를 한번에 map 한다)
+ *
+ * 각 partition의 ExecutionContext : file(경로), startOffset, endOffset
+ */
+public class PersonCsvBytePartitioner implements Partitioner {
+
+    private static final long MAX_RANGE_SIZE = 1L << 30;   // 1GB
+
+    private final Path path;
+
+    public PersonCsvBytePartitioner(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> result = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long count = Math.max(gridSize, (size + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+
+            long start = 0;
+            for (long i = 1; i <= count && start < size; i++) {
+                long end = i == count ? size : Math.max(start, lineStartFrom(channel, size * i / count, size));
+                if (end <= start) {
+                    continue;
+                }
+
+                ExecutionContext value = new ExecutionContext();
+                value.putString("file", path.toString());
+                value.putLong("startOffset", start);
+                value.putLong("endOffset", end);
+                result.put("partition" + result.size(), value);
+
+                start = end;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return result;
+    }
+
+    // position이 줄의 시작이면 그대로, 아니면 다음 줄의 시작
+    private long lineStartFrom(FileChannel channel, long position, long size) throws IOException {
+        if (position <= 0 || position >= size) {
+            return Math.min(Math.max(position, 0), size);
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(8 * 1024);
+        long offset = position - 1;
+        while (offset < size) {
+            block.clear();
+            int read = channel.read(block, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,153 @@
+package fastcampus.spring.batch.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 중복 이름을 processor(메모리)가 아니라 db에서 거르는 writer.
+ * person.name_key(unique index)에 name을 넣고, 이미 있는 이름이면 insert 하지 않는다.
+ * - mysql : insert ... select ... where not exists ... on duplicate key update (동시에 같은 이름이 들어오면 unique index가 막는다)
+ * - h2    : merge into ... using (values ...) when not matched then insert
+ *           다른 thread가 같은 이름을 먼저 넣으면 DuplicateKeyException이 나므로, 그 문장만 다시 실행한다. (다시 실행하면 matched 라 건너뛴다)
+ * 여러 thread가 같은 순서로 lock을 잡도록 name_key 순으로 정렬해서 보낸다. (name_key가 없는 건은 마지막)
+ * mysql에서 그래도 deadlock이 나면 transaction 전체가 rollback 되므로 여기서 다시 실행하지 않는다.
+ * step에 retry(DeadlockLoserDataAccessException)를 설정해서 chunk를 rollback 하고 다시 쓰게 한다.
+ * chunk를 rowsPerStatement 건씩 multi-row 문장 하나로 보내므로, JpaItemWriter(merge)처럼 insert 전에 select 하지 않는다.
+ *
+ * processor가 상태를 갖지 않으므로 multi-thread, partition step에서도 그대로 사용할 수 있다.
+ * 저장하지 않은 중복 건수는 commit 된 chunk만 세서 StepExecution의 ExecutionContext(DUPLICATE_COUNT)에 더한다.
+ * (writeCount에는 중복 건수도 포함된다)
+ */
+@Slf4j
+public class PersonUpsertItemWriter implements ItemWriter<Person> {
+
+    public static final String DUPLICATE_COUNT = "duplicateNameCount";
+
+    private static final String MYSQL_INSERT = "insert into person (name, age, address, name_key) select s.name, s.age, s.address, s.name_key from (%s) s " +
+            "where not exists (select 1 from person p where p.name_key = s.name_key) " +
+            "on duplicate key update name_key = person.name_key";
+    private static final String MYSQL_FIRST_ROW = "select ? name, ? age, ? address, ? name_key";
+    private static final String MYSQL_ROW = " union all select ?, ?, ?, ?";
+
+    // values 의 컬럼 이름은 c1, c2 ... 이다.
+    private static final String H2_MERGE = "merge into person p using (values %s) s on p.name_key = s.c4 " +
+            "when not matched then insert (name, age, address, name_key) values (s.c1, s.c2, s.c3, s.c4)";
+    private static final String H2_ROW = "(?, ?, ?, ?)";
+    private static final int H2_RETRY_LIMIT = 3;
+
+    private static final Comparator<Person> NAME_KEY_ORDER = Comparator.comparing(
+            (Person person) -> person.isNotEmptyName() ? person.getName() : null,
+            Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean mysql;
+    private final int rowsPerStatement;
+
+    public PersonUpsertItemWriter(DataSource dataSource, int rowsPerStatement) throws Exception {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.mysql = DatabaseType.fromMetaData(dataSource) == DatabaseType.MYSQL;
+        this.rowsPerStatement = rowsPerStatement;
+    }
+
+    @Override
+    public void write(List<? extends Person> items) throws Exception {
+        // 같은 chunk 안의 중복은 db에 보내지 않는다. 이름이 없으면 name_key를 null로 저장한다. (중복 검사 대상이 아니다)
+        Map<String, Person> unique = new LinkedHashMap<>();
+        List<Person> rows = new ArrayList<>();
+        for (Person item : items) {
+            if (!item.isNotEmptyName()) {
+                rows.add(item);
+            } else if (Objects.isNull(unique.putIfAbsent(item.getName(), item))) {
+                rows.add(item);
+            }
+        }
+
+        rows.sort(NAME_KEY_ORDER);
+
+        int inserted = 0;
+        for (int from = 0; from < rows.size(); from += rowsPerStatement) {
+            inserted += upsert(rows.subList(from, Math.min(from + rowsPerStatement, rows.size())));
+        }
+
+        long duplicates = items.size() - inserted;
+        if (duplicates > 0) {
+            countAfterCommit(duplicates);
+        }
+        log.debug("{}건 중 {}건 저장, 중복 {}건", items.size(), inserted, duplicates);
+    }
+
+    private int upsert(List<Person> rows) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>(rows.size() * 4);
+        for (Person row : rows) {
+            if (mysql) {
+                sql.append(sql.length() == 0 ? MYSQL_FIRST_ROW : MYSQL_ROW);
+            } else {
+                sql.append(sql.length() == 0 ? "" : ", ").append(H2_ROW);
+            }
+            args.add(row.getName());
+            args.add(row.getAge());
+            args.add(row.getAddress());
+            args.add(row.isNotEmptyName() ? row.getName() : null);
+        }
+
+        // mysql은 다른 thread가 먼저 넣은 이름(on duplicate key)도 1건으로 센다. (CLIENT_FOUND_ROWS) 드물게 중복 건수가 적게 나올 수 있다.
+        if (mysql) {
+            return jdbcTemplate.update(String.format(MYSQL_INSERT, sql), args.toArray());
+        }
+
+        for (int retry = 1; ; retry++) {
+            try {
+                return jdbcTemplate.update(String.format(H2_MERGE, sql), args.toArray());
+            } catch (DuplicateKeyException e) {
+                if (retry >= H2_RETRY_LIMIT) {
+                    throw e;
+                }
+                log.debug("다른 thread가 같은 이름을 먼저 저장했습니다. 다시 실행합니다. ({}번째)", retry);
+            }
+        }
+    }
+
+    // rollback 된 chunk는 다시 쓰므로, commit 된 뒤에 센다.
+    private void countAfterCommit(long duplicates) {
+        StepContext context = StepSynchronizationManager.getContext();
+        if (Objects.isNull(context)) {
+            return;
+        }
+        StepExecution stepExecution = context.getStepExecution();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            count(stepExecution, duplicates);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                count(stepExecution, duplicates);
+            }
+        });
+    }
+
+    private static void count(StepExecution stepExecution, long duplicates) {
+        synchronized (stepExecution) {
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+            executionContext.putLong(DUPLICATE_COUNT, executionContext.getLong(DUPLICATE_COUNT, 0L) + duplicates);
+        }
+    }
+}
@@ -2,12 +2,15 @@ package fastcampus.spring.batch.part3;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.builder.FaultTolerantStepBuilder;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
@@ -24,8 +27,14 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
 
 import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.nio.file.Paths;
 import java.util.*;
 
 @Slf4j
@@ -36,13 +45,17 @@ public class SavePersonConfiguration {
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+
+    private final int EXPECTED_NAMES = 1_000_000;     // Bloom filter 크기, NameHashSet은 넘으면 커진다
+    private final int UPSERT_ROWS = 500;              // PersonUpsertItemWriter가 문장 하나로 보내는 row 수
 
 
     @Bean
     public Job savePersonJob() throws Exception {
         return jobBuilderFactory.get("savePersonJob")
                 .incrementer(new RunIdIncrementer())
-                .start(this.savePersonStep(null))
+                .start(this.savePersonStep(null, null))
                 // listener를 연속으로 설정하면 내부적으로 List에 담아서 실행한다.(설정한 순서대로 실행)
                 .listener(new SavePersonListener.SavePersonJobExecutionListener())      // SavePersonListener에 선언한 JobExecutionListner 적용
                 .listener(new SavePersonListener.SavePersonAnnotationJobExecution())    // SavePersonListener에 선언한 JobExecutionListner 적용
@@ -52,28 +65,45 @@ public class SavePersonConfiguration {
     @Bean
     @JobScope
     public Step savePersonStep(
-            @Value("#{jobParameters[allow_duplicate]}") String allowDuplicate
+            @Value("#{jobParameters[allow_duplicate]}") String allowDuplicate,
+            @Value("#{jobParameters[dedup]}") String dedup
     ) throws Exception {
         boolean flag = "true".equals(allowDuplicate) ? true : false;
-        return stepBuilderFactory.get("savePersonStep")
+        // db이면 중복 이름을 writer(unique index)에서 거른다. processor는 이름을 기억하지 않는다.
+        // name_key로만 비교하므로, name_key가 없는(null) 기존 row의 이름은 중복으로 보지 않는다.
+        boolean dbDedup = !flag && "db".equals(dedup);
+        // 이 processor는 step 전체에 걸쳐 이미 나온 이름을 기억한다. (메모리, spill 파일을 사용하므로 필요할때만 만든다)
+        DuplicateNameProcessor duplicateNameProcessor = flag || dbDedup ? null : duplicateNameProcessor("bloom".equals(dedup));
+        FaultTolerantStepBuilder<Person, Person> stepBuilder = stepBuilderFactory.get("savePersonStep")
                 .<Person,Person>chunk(10)
                 .reader(csvFileItemReader())
-                .processor(itemProcessor(flag))
-                .writer(compositeItemWriter())
+                .processor(itemProcessor(duplicateNameProcessor))
+                .writer(compositeItemWriter(dbDedup))
                 .listener(new SavePersonListener.SavePersonStepExecutionListener())     // SavePersonListener에 선언한 StepExecutionListener(annotation 기반)
                 .faultTolerant()                                                        // FaultTolerantStepBuilder를 반환하고, skip과 같은 예외 처리를 설정할 수 있는 method가 생긴다.
                 .skip(NotFoundNameException.class)                                      // NotFoundNameException을
-                .skipLimit(2)                                                           // 3번까지 허용하겠다.
 //                .retry(NotFoundNameException.class)
 //                .retryLimit(3)
 //                .writer(getPersonJpaItemWriter())
-                .build();
+                .skipLimit(2)                                                           // 3번까지 허용하겠다.
+                .retry(DeadlockLoserDataAccessException.class)                          // dedup=db 에서 mysql deadlock이 나면 chunk를 rollback 하고 다시 쓴다.
+                .retryLimit(3);
+
+        if (Objects.nonNull(duplicateNameProcessor)) {
+            // 다른 thread가 commit한 이름을 db에서 확인할 수 있도록 read committed로 실행한다.
+            stepBuilder.transactionAttribute(chunkTransactionAttribute());
+            // 재시작해도 이름을 기억하도록 stream, listener로 등록한다.
+            stepBuilder.stream(duplicateNameProcessor)
+                    .listener((ChunkListener) duplicateNameProcessor)
+                    .listener((StepExecutionListener) duplicateNameProcessor);
+        }
+        return stepBuilder.build();
     }
 
-    private CompositeItemWriter<? super Person> compositeItemWriter() throws Exception {
+    private CompositeItemWriter<? super Person> compositeItemWriter(boolean dbDedup) throws Exception {
         CompositeItemWriter<Person> personCompositeItemWriter = new CompositeItemWriter<>();
         List<ItemWriter<? super Person>> delegates = new ArrayList<>();
-        delegates.add(getPersonJpaItemWriter());
+        delegates.add(dbDedup ? new PersonUpsertItemWriter(dataSource, UPSERT_ROWS) : getPersonJpaItemWriter());
         delegates.add(getLogItemWriter());
         personCompositeItemWriter.setDelegates(delegates);
 
@@ -113,7 +143,7 @@ public class SavePersonConfiguration {
         FlatFileItemReader<Person> csvFileItemReader = new FlatFileItemReaderBuilder<Person>()
                 .name("csvFileItemReader")
                 .encoding("UTF-8")
-                .resource(new ClassPathResource("test.csv"))
+                .resource(new DecompressingResource(new ClassPathResource("test.csv")))
                 .linesToSkip(1)
                 .lineMapper(lineMapper)
                 .build();
@@ -122,10 +152,10 @@ public class SavePersonConfiguration {
         return csvFileItemReader;
     }
 
-    private ItemProcessor<? super Person,? extends Person> itemProcessor(boolean flag) throws Exception {
+    private ItemProcessor<? super Person,? extends Person> itemProcessor(DuplicateNameProcessor duplicateNameProcessor) throws Exception {
 
         // 사람 이름 중복여부 체크해주는 processor
-        ItemProcessor<Person, Person> duplicateValidationProcessor = getDuplicateValidationProcessor(flag);
+        ItemProcessor<Person, Person> duplicateValidationProcessor = getDuplicateValidationProcessor(duplicateNameProcessor);
 
         // 이름이 없을경우 NotFoundNameException을 던지는 processor
         ItemProcessor<Person, Person> validationProcessor = item -> {
@@ -145,21 +175,32 @@ public class SavePersonConfiguration {
         return itemProcessor;
     }
 
-    private ItemProcessor<Person, Person> getDuplicateValidationProcessor(boolean flag) {
-        // 이 dupSet은 step 전체에 걸쳐 사용된다.( 여러번의 chunk에서 계속 상태를 유지한다) , 이게 StepExecutionContext와 관련이 있는건가?
-        Set<String> dupSet = new HashSet<>();
-        ItemProcessor<Person, Person> duplicateValidationProcessor =  item -> {
-            if(flag) {
-                return item;
-            } else {
-                if(dupSet.contains(item.getName())) {
-                    return null;
-                } else {
-                    dupSet.add(item.getName());
-                    return item;
-                }
-            }
-        };
-        return duplicateValidationProcessor;
+    private ItemProcessor<Person, Person> getDuplicateValidationProcessor(DuplicateNameProcessor duplicateNameProcessor) {
+        // 중복을 허용하거나 db에서 거르면 그대로 통과
+        return Objects.isNull(duplicateNameProcessor) ? item -> item : duplicateNameProcessor;
+    }
+
+    /**
+     * 이름의 64bit hash를 기억하고, hash가 이미 있으면 db에서 정확하게 확인한다. (person.name index를 사용한다)
+     * db 확인은 chunk 트랜잭션의 connection으로 한다. (별도 트랜잭션이면 thread 마다 connection을 2개씩 잡아서 pool이 모자랄 수 있다)
+     * 다른 thread가 commit한 이름을 바로 볼 수 있도록 step은 read committed로 실행한다. (chunkTransactionAttribute)
+     * @param bloom : NameHashSet 앞에 Bloom filter를 둔다.
+     */
+    private DuplicateNameProcessor duplicateNameProcessor(boolean bloom) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        return new DuplicateNameProcessor(
+                new NameHashSet(EXPECTED_NAMES),
+                bloom ? new NameBloomFilter(EXPECTED_NAMES, 0.01) : null,
+                name -> jdbcTemplate.queryForObject(
+                        "select count(*) from person where name = ?", Integer.class, name) > 0,
+                Paths.get("output", "dedup"));
+    }
+
+    // mysql 기본값(repeatable read)이면 chunk에서 처음 읽은 시점 이후에 다른 thread가 commit한 이름을 보지 못한다.
+    private DefaultTransactionAttribute chunkTransactionAttribute() {
+        DefaultTransactionAttribute attribute = new DefaultTransactionAttribute();
+        attribute.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        return attribute;
     }
 }
@@ -0,0 +1,116 @@
+package fastcampus.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * SaveUserTasklet의 대용량 버전.
+ * User, Orders는 IDENTITY 전략이라 JPA로 저장하면 insert를 batch로 묶을 수 없고, 저장한 entity가 모두 영속성 컨텍스트에 남는다.
+ *
+ * 이 tasklet은 entity를 만들지 않고 jdbc batch insert로 저장한다.
+ * - id는 시작할 때 max(id) 다음 값부터 직접 할당한다. -> orders가 user_id를 알기 위해 user insert 결과를 기다릴 필요가 없다.
+ * - 한번의 execute()가 chunkSize 명의 유저와 주문을 저장하고 CONTINUABLE을 반환한다. (execute() 마다 커밋되므로 메모리는 chunkSize 만큼만 사용)
+ * - 시작 id와 다음 index를 StepExecutionContext에 저장하므로, 재시작 시 마지막으로 커밋된 chunk 다음부터 같은 데이터를 이어서 만든다.
+ * mysql은 rewriteBatchedStatements=true 설정으로 batch가 여러 row의 insert 하나로 바뀌어 전송된다.
+ */
+@Slf4j
+public class BulkSaveUserTasklet implements Tasklet {
+
+    private static final String NEXT_INDEX = "nextIndex";
+    private static final String USER_BASE_ID = "userBaseId";
+    private static final String ORDER_BASE_ID = "orderBaseId";
+
+    private static final String INSERT_USER_SQL =
+            "insert into user (id, username, level, total_amount, order_count) values (?, ?, ?, ?, 1)";
+    private static final String INSERT_ORDER_SQL =
+            "insert into orders (id, item_name, amount, created_date, user_id) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long seedSize;
+    private final UserSeedDistribution distribution;
+    private final int chunkSize;
+
+    public BulkSaveUserTasklet(DataSource dataSource, long seedSize, UserSeedDistribution distribution, int chunkSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.seedSize = seedSize;
+        this.distribution = distribution;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+
+        // 최초 실행 시에만 id를 할당한다. 재시작 시에는 저장된 값을 그대로 사용해야 같은 id로 이어서 만든다.
+        if (!executionContext.containsKey(NEXT_INDEX)) {
+            executionContext.putLong(USER_BASE_ID, maxId("user"));
+            executionContext.putLong(ORDER_BASE_ID, maxId("orders"));
+            executionContext.putLong(NEXT_INDEX, 0);
+        }
+
+        long userBaseId = executionContext.getLong(USER_BASE_ID);
+        long orderBaseId = executionContext.getLong(ORDER_BASE_ID);
+        long startIndex = executionContext.getLong(NEXT_INDEX);
+        int size = (int) Math.min(chunkSize, seedSize - startIndex);
+
+        if (size <= 0) {
+            return RepeatStatus.FINISHED;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_USER_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                long index = startIndex + i;
+                ps.setLong(1, userBaseId + index + 1);
+                ps.setString(2, "test username" + index);
+                ps.setString(3, User.Level.NORMAL.name());
+                ps.setLong(4, distribution.amountOf(index));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return size;
+            }
+        });
+
+        jdbcTemplate.batchUpdate(INSERT_ORDER_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                long index = startIndex + i;
+                ps.setLong(1, orderBaseId + index + 1);
+                ps.setString(2, "item" + index);
+                ps.setInt(3, distribution.amountOf(index));
+                ps.setDate(4, Date.valueOf(distribution.createdDateOf(index)));
+                ps.setLong(5, userBaseId + index + 1);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return size;
+            }
+        });
+
+        contribution.incrementWriteCount(size);
+
+        long nextIndex = startIndex + size;
+        executionContext.putLong(NEXT_INDEX, nextIndex);
+
+        return nextIndex >= seedSize ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    private long maxId(String table) {
+        Long maxId = jdbcTemplate.queryForObject("select max(id) from " + table, Long.class);
+        return maxId == null ? 0 : maxId;
+    }
+}
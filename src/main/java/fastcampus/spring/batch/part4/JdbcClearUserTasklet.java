@@ -0,0 +1,86 @@
+package fastcampus.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+
+/**
+ * ClearUserStep의 대용량 버전.
+ * userRepository.deleteAll()은 모든 User와 orders를 읽어서 한건씩 지우기 때문에, entity를 읽지 않고 db에서 바로 지운다.
+ * orders가 user를 참조(FK)하므로 항상 orders를 먼저 지운다.
+ *
+ * truncate = true
+ *  - orders는 truncate 한다.
+ *  - user는 mysql이면 현재 connection만 FK 검사를 끄고 truncate 한다. (orders가 이미 비어있으므로 안전하다)
+ *  - h2는 참조되는 테이블을 truncate 할 수 없으므로 user는 chunk 단위 delete로 지운다.
+ * truncate = false
+ *  - delete ... limit chunkSize를 반복한다. execute() 한번에 chunk 하나를 지우고 CONTINUABLE을 반환하므로 chunk 마다 커밋된다.
+ *
+ * 지운 row 수(orders + user)는 StepContribution의 write count로 남긴다.
+ */
+@Slf4j
+public class JdbcClearUserTasklet implements Tasklet {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseType databaseType;
+    private final boolean truncate;
+    private final int chunkSize;
+
+    public JdbcClearUserTasklet(DataSource dataSource, boolean truncate, int chunkSize) throws MetaDataAccessException {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.databaseType = DatabaseType.fromMetaData(dataSource);
+        this.truncate = truncate;
+        this.chunkSize = chunkSize;
+
+        if (databaseType != DatabaseType.MYSQL && databaseType != DatabaseType.H2) {
+            throw new IllegalArgumentException("지원하지 않는 database 입니다 : " + databaseType);
+        }
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        if (truncate) {
+            truncate(contribution);
+        }
+
+        // truncate 하지 못한 테이블만 남아있다.
+        int deleted = jdbcTemplate.update("delete from orders limit " + chunkSize);
+        if (deleted == 0) {
+            deleted = jdbcTemplate.update("delete from user limit " + chunkSize);
+        }
+        contribution.incrementWriteCount(deleted);
+
+        return deleted == 0 ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    private void truncate(StepContribution contribution) {
+        contribution.incrementWriteCount(truncate("orders"));
+
+        if (databaseType == DatabaseType.MYSQL) {
+            jdbcTemplate.execute("set foreign_key_checks = 0");
+            try {
+                contribution.incrementWriteCount(truncate("user"));
+            } finally {
+                jdbcTemplate.execute("set foreign_key_checks = 1");
+            }
+        }
+    }
+
+    private int truncate(String table) {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from " + table, Integer.class);
+        if (count == null || count == 0) {
+            return 0;
+        }
+        jdbcTemplate.execute("truncate table " + table);
+        log.info("{} truncate : {}건", table, count);
+
+        return count;
+    }
+}
@@ -1,33 +1,75 @@
 package fastcampus.spring.batch.part4;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
 
 import java.time.LocalDate;
-import java.util.Collection;
 
+/**
+ * 등급 상향 결과 요약을 log로 찍는다.
+ * User를 조회하지 않고 count 쿼리와 StepExecution의 count만 사용하므로, 처리 건수와 상관없이 메모리 사용량이 일정하다.
+ */
 @Slf4j
-@RequiredArgsConstructor
 public class LevelUpJobExecutionListener implements JobExecutionListener {
 
     private final UserRepository userRepository;
+    private final LevelUpTransitionCounter transitionCounter;
+
+    public LevelUpJobExecutionListener(UserRepository userRepository) {
+        this(userRepository, null);
+    }
+
+    /**
+     * @param transitionCounter : UserLevelUpItemWriter와 같은 counter를 넘기면 등급 상향 전 -> 후 건수도 출력한다.
+     */
+    public LevelUpJobExecutionListener(UserRepository userRepository, LevelUpTransitionCounter transitionCounter) {
+        this.userRepository = userRepository;
+        this.transitionCounter = transitionCounter;
+    }
 
     @Override
     public void beforeJob(JobExecution jobExecution) {
-        //none
+        if (transitionCounter != null) {
+            transitionCounter.reset();
+        }
     }
 
     @Override
     public void afterJob(JobExecution jobExecution) {
         // 등급 상향된 건수와, job의 처리 시간을 log로 찍을것이다.
-        Collection<User> updatedUsers = userRepository.findALlByUpdatedDate(LocalDate.now());
+        LocalDate now = LocalDate.now();
+        long updatedCount = userRepository.countByUpdatedDate(now);
 
         long executionTime = jobExecution.getEndTime().getTime() - jobExecution.getStartTime().getTime();
         log.info("회원 등급 업데이트 배치 프로그램");
         log.info("------------------------");
-        log.info("총 데이터 처리 {}건, 처리 시간 {}  millis", updatedUsers.size(), executionTime);
+        log.info("총 데이터 처리 {}건, 처리 시간 {}  millis", updatedCount, executionTime);
+
+        for (Object[] levelCount : userRepository.countLevelByUpdatedDate(now)) {
+            log.info("{} 등급으로 상향 {}건", levelCount[0], levelCount[1]);
+        }
+
+        if (transitionCounter != null) {
+            for (User.Level from : User.Level.values()) {
+                for (User.Level to : User.Level.values()) {
+                    long count = transitionCounter.get(from, to);
+                    if (count > 0) {
+                        log.info("{} -> {} {}건", from, to, count);
+                    }
+                }
+            }
+        }
+
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            long duration = stepExecution.getEndTime() == null ? 0
+                    : stepExecution.getEndTime().getTime() - stepExecution.getStartTime().getTime();
+            long throughput = stepExecution.getReadCount() * 1_000L / Math.max(1, duration);
 
+            log.info("{} : read {}건, write {}건, filter {}건, 처리 시간 {} millis, {}건/sec",
+                    stepExecution.getStepName(), stepExecution.getReadCount(), stepExecution.getWriteCount(),
+                    stepExecution.getFilterCount(), duration, throughput);
+        }
     }
 }
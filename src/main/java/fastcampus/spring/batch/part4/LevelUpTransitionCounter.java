@@ -0,0 +1,65 @@
+package fastcampus.spring.batch.part4;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 등급 상향 전 -> 후 등급별 건수. (NORMAL -> SILVER 몇 건, ...)
+ * 등급 수 x 등급 수 크기의 배열 하나만 사용하므로, 몇 건을 처리하든 메모리 사용량은 같다.
+ * 여러 쓰레드(multi-thread step, partition)의 writer가 동시에 증가시킬 수 있다.
+ *
+ * writer, tasklet은 chunk 안의 건수를 새 counter에 센 뒤 addAfterCommit()으로 더한다.
+ * rollback 된 chunk는 다시 처리하므로, commit 된 chunk만 더해야 두번 세지 않는다.
+ */
+public class LevelUpTransitionCounter {
+
+    private static final User.Level[] LEVELS = User.Level.values();
+
+    private final AtomicLongArray counts = new AtomicLongArray(LEVELS.length * LEVELS.length);
+
+    public void increment(User.Level from, User.Level to) {
+        counts.incrementAndGet(index(from, to));
+    }
+
+    public void add(User.Level from, User.Level to, long count) {
+        counts.addAndGet(index(from, to), count);
+    }
+
+    /**
+     * 현재 트랜잭션이 commit 된 뒤에 chunk의 건수를 더한다. 트랜잭션이 없으면 바로 더한다.
+     */
+    public void addAfterCommit(LevelUpTransitionCounter chunk) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(chunk);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(chunk);
+            }
+        });
+    }
+
+    private void add(LevelUpTransitionCounter chunk) {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.addAndGet(i, chunk.counts.get(i));
+        }
+    }
+
+    public long get(User.Level from, User.Level to) {
+        return counts.get(index(from, to));
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private int index(User.Level from, User.Level to) {
+        return from.ordinal() * LEVELS.length + to.ordinal();
+    }
+}
@@ -0,0 +1,136 @@
+package fastcampus.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * User entity를 읽지 않고, db 안에서 유저별 주문 금액 합계를 구해 등급을 상향한다.
+ * 한번의 execute()가 id 범위 [currentId, currentId + chunkSize - 1] 하나를 처리하고 CONTINUABLE을 반환한다.
+ * TaskletStep은 execute() 한번마다 트랜잭션을 커밋하고 StepExecutionContext를 저장하기 때문에, 재시작 시 마지막으로 끝난 범위 다음부터 실행된다.
+ * transitionCounter가 있으면 update 전에 같은 조건으로 (상향 전 등급, 상향 후 등급)별 건수를 조회해서, commit 된 뒤에 더한다.
+ */
+@Slf4j
+public class SqlLevelUpTasklet implements Tasklet {
+
+    private static final String CURRENT_ID = "currentId";
+    private static final String MAX_ID = "maxId";
+
+    private static final String TOTAL_AMOUNT_SQL =
+            "select o.user_id, sum(o.amount) as total_amount from orders o " +
+            "where o.user_id between :startId and :endId group by o.user_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+    private final String levelUpSql;
+    private final String transitionSql;
+    private final LevelUpTransitionCounter transitionCounter;
+
+    public SqlLevelUpTasklet(DataSource dataSource, int chunkSize) throws MetaDataAccessException {
+        this(dataSource, chunkSize, null);
+    }
+
+    public SqlLevelUpTasklet(DataSource dataSource, int chunkSize, LevelUpTransitionCounter transitionCounter) throws MetaDataAccessException {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.chunkSize = chunkSize;
+        this.levelUpSql = levelUpSql(DatabaseType.fromMetaData(dataSource));
+        this.transitionSql = transitionSql();
+        this.transitionCounter = transitionCounter;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+
+        // 최초 실행 시에만 id 범위를 조회한다. 재시작 시에는 저장된 범위를 그대로 사용한다.
+        if (!executionContext.containsKey(CURRENT_ID)) {
+            Map<String, Object> range = jdbcTemplate.queryForMap(
+                    "select min(id) as min_id, max(id) as max_id from user", new MapSqlParameterSource());
+            if (range.get("min_id") == null) {
+                return RepeatStatus.FINISHED;
+            }
+            executionContext.putLong(CURRENT_ID, ((Number) range.get("min_id")).longValue());
+            executionContext.putLong(MAX_ID, ((Number) range.get("max_id")).longValue());
+        }
+
+        long startId = executionContext.getLong(CURRENT_ID);
+        long maxId = executionContext.getLong(MAX_ID);
+        long endId = Math.min(startId + chunkSize - 1, maxId);
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("startId", startId)
+                .addValue("endId", endId)
+                .addValue("updatedDate", Date.valueOf(LocalDate.now()));
+
+        Integer readCount = jdbcTemplate.queryForObject(
+                "select count(*) from user where id between :startId and :endId", parameters, Integer.class);
+        if (transitionCounter != null) {
+            countTransitions(parameters);
+        }
+        int writeCount = jdbcTemplate.update(levelUpSql, parameters);
+
+        // JpaPagingItemReader 방식과 같은 read/write/filter count가 StepExecution에 남도록 한다.
+        for (int i = 0; i < readCount; i++) {
+            contribution.incrementReadCount();
+        }
+        contribution.incrementWriteCount(writeCount);
+        contribution.incrementFilterCount(readCount - writeCount);
+
+        executionContext.putLong(CURRENT_ID, endId + 1);
+
+        return endId >= maxId ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    // update 전에 조회해야 상향 전 등급을 알 수 있다.
+    private void countTransitions(MapSqlParameterSource parameters) {
+        LevelUpTransitionCounter chunk = new LevelUpTransitionCounter();
+        jdbcTemplate.query(transitionSql, parameters, (RowCallbackHandler) rs -> chunk.add(
+                User.Level.valueOf(rs.getString("from_level")),
+                User.Level.valueOf(rs.getString("to_level")),
+                rs.getLong("user_count")));
+        transitionCounter.addAfterCommit(chunk);
+    }
+
+    private String transitionSql() {
+        String nextLevel = User.Level.nextLevelSql("t.total_amount");
+        String availableLevelUp = User.Level.availableLevelUpSql("u.level", "t.total_amount");
+
+        return "select u.level as from_level, " + nextLevel + " as to_level, count(*) as user_count from user u " +
+                "join (" + TOTAL_AMOUNT_SQL + ") t on t.user_id = u.id " +
+                "where u.id between :startId and :endId and " + availableLevelUp + " " +
+                "group by u.level, " + nextLevel;
+    }
+
+    private String levelUpSql(DatabaseType databaseType) {
+        String nextLevel = User.Level.nextLevelSql("t.total_amount");
+        String availableLevelUp = User.Level.availableLevelUpSql("u.level", "t.total_amount");
+
+        switch (databaseType) {
+            case MYSQL:
+                return "update user u join (" + TOTAL_AMOUNT_SQL + ") t on t.user_id = u.id " +
+                        "set u.level = " + nextLevel + ", u.updated_date = :updatedDate " +
+                        "where u.id between :startId and :endId and " + availableLevelUp;
+            case H2:
+                // h2는 update join을 지원하지 않아서 merge ... key(id)로 기존 row의 컬럼만 갱신한다.
+                return "merge into user (id, level, updated_date) key (id) " +
+                        "select u.id, " + nextLevel + ", :updatedDate from user u " +
+                        "join (" + TOTAL_AMOUNT_SQL + ") t on t.user_id = u.id " +
+                        "where u.id between :startId and :endId and " + availableLevelUp;
+            default:
+                throw new IllegalArgumentException("지원하지 않는 database 입니다 : " + databaseType);
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package fastcampus.spring.batch.part4;
 
 import fastcampus.spring.batch.part5.Orders;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 
 import javax.persistence.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 @Entity
 @Getter
@@ -31,19 +36,61 @@ public class User {
 
     private LocalDate updatedDate;
 
+    // orders의 금액 합계와 건수, 등급 상향 때마다 orders 전체를 읽지 않도록 주문을 저장하는 트랜잭션에서 같이 갱신한다.
+    // (addOrder(), BulkSaveUserTasklet) levelUpMode=total만 이 값으로 등급 상향을 처리하고, 값이 없는(null) 기존 유저는 UserTotalAmountBackfillTasklet이 채운다.
+    private Long totalAmount;
+
+    private Integer orderCount;
+
+    // user 테이블만 읽었으면(orders를 읽지 않았으면) false, 이때만 totalAmount로 등급을 계산한다.
+    @Transient
+    @Getter(AccessLevel.NONE)
+    private boolean ordersLoaded = true;
+
     @Builder
     public User(String username, List<Orders> orders) {
         this.username = username;
-        this.orders = orders;
+        this.orders = new ArrayList<>();
+        this.totalAmount = 0L;
+        this.orderCount = 0;
+
+        if (orders != null) {
+            orders.forEach(this::addOrder);
+        }
+    }
+
+    /**
+     * orders를 읽지 않고 user 테이블만 읽을 때 사용한다. (orders는 비어있다)
+     */
+    User(Long id, String username, Level level, Long totalAmount, Integer orderCount) {
+        this.id = id;
+        this.username = username;
+        this.level = level;
+        this.orders = new ArrayList<>();
+        this.totalAmount = totalAmount;
+        this.orderCount = orderCount;
+        this.ordersLoaded = false;
+    }
+
+    public void addOrder(Orders order) {
+        this.orders.add(order);
+        if (this.totalAmount != null) {
+            this.totalAmount += order.getAmount();
+            this.orderCount++;
+        }
     }
 
     public boolean availableLevelUp() {
         return Level.availableLevelUp(this.getLevel(), this.getTotalAmount());
     }
 
-    private int getTotalAmount() {
+    // entity로 읽었으면 orders에서 계산한다. (jdbc로 수정된 total_amount를 믿지 않는다)
+    private long getTotalAmount() {
+        if (!this.ordersLoaded) {
+            return Objects.isNull(this.totalAmount) ? 0 : this.totalAmount;
+        }
         return this.orders.stream()
-                .mapToInt(Orders::getAmount)
+                .mapToLong(Orders::getAmount)
                 .sum();
     }
 
@@ -69,7 +116,7 @@ public class User {
             this.nextLevel = nextLevel;
         }
 
-        private static boolean availableLevelUp(Level level, int totalAmount) {
+        private static boolean availableLevelUp(Level level, long totalAmount) {
             if(Objects.isNull(level)) {             // 걍 null처리인듯
                 return false;
             }
@@ -79,7 +126,7 @@ public class User {
             return totalAmount >= level.nextAmount;
         }
 
-        private static Level getNextLevel(int totalAmount) {
+        private static Level getNextLevel(long totalAmount) {
             if(totalAmount >= VIP.nextAmount) {
                 return VIP;
             } else if (totalAmount >= GOLD.nextAmount) {
@@ -91,5 +138,44 @@ public class User {
             }
             return NORMAL;
         }
+
+        /**
+         * entity 없이 등급만 계산할 때 사용한다.
+         * @return 등급 상향 대상이면 상향될 등급, 아니면 null
+         */
+        public static Level nextLevelOf(Level level, long totalAmount) {
+            return availableLevelUp(level, totalAmount) ? getNextLevel(totalAmount) : null;
+        }
+
+        /**
+         * availableLevelUp()과 동일한 조건을 sql 조건절로 만든다.
+         * 등급 기준은 enum 한곳에서만 관리하기 위해 sql을 직접 쓰지 않고 생성한다.
+         * @param levelColumn : 현재 등급 컬럼
+         * @param totalAmountColumn : 총 주문 금액 컬럼(혹은 식)
+         * @return ex) ((level = 'GOLD' and total >= 500000) or (level = 'SILVER' and total >= 300000) or ...)
+         */
+        public static String availableLevelUpSql(String levelColumn, String totalAmountColumn) {
+            return Arrays.stream(values())
+                    .filter(level -> Objects.nonNull(level.nextLevel))
+                    .map(level -> String.format("(%s = '%s' and %s >= %d)",
+                            levelColumn, level.name(), totalAmountColumn, level.nextAmount))
+                    .collect(Collectors.joining(" or ", "(", ")"));
+        }
+
+        /**
+         * getNextLevel()과 동일한 규칙을 sql case 문으로 만든다.
+         * @param totalAmountColumn : 총 주문 금액 컬럼(혹은 식)
+         * @return ex) case when total >= 500000 then 'VIP' when total >= 300000 then 'GOLD' ... else 'NORMAL' end
+         */
+        public static String nextLevelSql(String totalAmountColumn) {
+            String whenClause = Arrays.stream(values())
+                    .filter(level -> Objects.nonNull(level.nextLevel))
+                    .sorted(Comparator.comparingInt((Level level) -> level.nextAmount).reversed())
+                    .map(level -> String.format("when %s >= %d then '%s'",
+                            totalAmountColumn, level.nextAmount, level.nextLevel.name()))
+                    .collect(Collectors.joining(" "));
+
+            return String.format("case %s else '%s' end", whenClause, NORMAL.name());
+        }
     }
 }
@@ -1,7 +1,7 @@
 package fastcampus.spring.batch.part4;
 
 import fastcampus.spring.batch.part5.JobParametersDecide;
-import fastcampus.spring.batch.part5.OrderStatistics;
+import fastcampus.spring.batch.part5.OrderStatisticsStepFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -9,33 +9,28 @@ import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.flow.Flow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
 import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
 import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
+import java.sql.Date;
 import java.time.LocalDate;
-import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -44,6 +39,7 @@ public class UserConfiguration {
 
     private final String JOB_NAME = "userJob";
     private final int CHUNK_SIZE = 1_000;
+    private final long DEFAULT_SEED_SIZE = 40_000;
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
@@ -51,118 +47,106 @@ public class UserConfiguration {
 
     private final DataSource dataSource;
 
+    // writer가 세고 listener가 출력하는 등급 상향 전 -> 후 건수
+    private final LevelUpTransitionCounter transitionCounter = new LevelUpTransitionCounter();
+
     // 실무에선 이렇게 하나의 job에 성격이 다른 여러 step을 연결하지 않는다
     @Bean(JOB_NAME)
     public Job userJob() throws Exception {
         return jobBuilderFactory.get(JOB_NAME)
                 .incrementer(new RunIdIncrementer())
-                .start(clearUserStep())
-                .next(saveUserStep())
-                .next(userLevelUpStep())
-                .listener(new LevelUpJobExecutionListener(userRepository))
+                .start(clearUserStep(null))
+                .next(saveUserStep(null, null, null))
+                .next(userLevelUpStep(null))
+                .listener(new LevelUpJobExecutionListener(userRepository, transitionCounter))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())  // 결과가 JobParametersDecide.CONTINUE.getName() 와 같으면 이하 to() 내의 step을 실행한다.
-                .to(orderStatisticsStep(null))
+                .to(orderStatisticsStep(null, null))
                 .build()
                 .build();
     }
 
-    @Bean(JOB_NAME + "orderStatisticsStep")
-    @JobScope
-    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date) throws Exception {
-        return stepBuilderFactory.get(JOB_NAME + "orderStatisticsStep")
-                .<OrderStatistics, OrderStatistics>chunk(CHUNK_SIZE)
-                .reader(orderStatisticsItemReader(date))
-                .writer(orderStatisticsItemWriter(date))
-                .build();
-    }
-
     /**
-     * 한달간의 Orders 데이터를 읽어 일별 금액(amount)의 총합을 읽어들인다
-     * @param date
-     * @return
-     * @throws Exception
+     * date 달의 일별 주문 금액 csv를 만든다. statisticsMode가 cursor 이면 orders를 한번만 읽는다. (OrderStatisticsStepFactory)
      */
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        Map<String, Object> parameters = new HashMap<>();
-
-        parameters.put("startDate", yearMonth.atDay(1) );   // date 달의 1일
-        parameters.put("endDate", yearMonth.atEndOfMonth());           // date 달의 마지막일
-
-        // 정렬 -> created_date 기준 오름차순정렬
-        Map<String, Order> sortKey = Collections.singletonMap("created_date", Order.ASCENDING);
-
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(CHUNK_SIZE)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date ")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-
-        itemReader.afterPropertiesSet();
-
-        return itemReader;
+    @Bean(JOB_NAME + "orderStatisticsStep")
+    @JobScope
+    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date,
+                                    @Value("#{jobParameters[statisticsMode]}") String statisticsMode) throws Exception {
+        return new OrderStatisticsStepFactory(stepBuilderFactory, dataSource, CHUNK_SIZE)
+                .orderStatisticsStep(JOB_NAME + "orderStatisticsStep", JOB_NAME, date, statisticsMode);
     }
 
     /**
-     * orderStatisticsItemReader에서 읽은 데이터를 기준으로 csv 파일을 생성한다.
-     * @param date
-     * @return
+     * jobParameters의 clearMode가 truncate 혹은 delete 이면 entity를 읽지 않고 jdbc로 orders, user를 지운다.
      */
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date) throws Exception {
-
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        String fileName = String.format("%s년_%d월_일별_주문_금액.csv", yearMonth.getYear(), yearMonth.getMonthValue());
-
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-                .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
-                .name(JOB_NAME + "_orderStatisticsItemWriter")
-                .encoding("UTF-8")
-                .headerCallback(writer -> writer.write("total_amount, date"))
-                .build();
-
-        itemWriter.afterPropertiesSet();
-
-        return itemWriter;
-    }
-
     @Bean(JOB_NAME + "_clearUserStep")
-    public Step clearUserStep() {
+    @JobScope
+    public Step clearUserStep(@Value("#{jobParameters[clearMode]}") String clearMode) throws Exception {
+        if ("truncate".equals(clearMode) || "delete".equals(clearMode)) {
+            return stepBuilderFactory.get(JOB_NAME + "_clearUserStep")
+                    .tasklet(new JdbcClearUserTasklet(dataSource, "truncate".equals(clearMode), CHUNK_SIZE))
+                    .build();
+        }
+
         return stepBuilderFactory.get(JOB_NAME + "_clearUserStep")
                 .tasklet(new ClearUserStep(userRepository))
                 .build();
     }
 
+    /**
+     * jobParameters의 seedMode가 bulk이면 entity 대신 jdbc batch insert로 테스트 데이터를 만든다.
+     * seedSize(유저 수, 기본 40,000)와 seedDistribution(금액:비율,... 기본 UserSeedDistribution.DEFAULT)으로 양과 분포를 정한다.
+     */
     @Bean(JOB_NAME + "_saveUserStep")
-    public Step saveUserStep() {
+    @JobScope
+    public Step saveUserStep(@Value("#{jobParameters[seedMode]}") String seedMode,
+                             @Value("#{jobParameters[seedSize]}") Long seedSize,
+                             @Value("#{jobParameters[seedDistribution]}") String seedDistribution) {
+        if ("bulk".equals(seedMode)) {
+            return stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
+                    .tasklet(new BulkSaveUserTasklet(dataSource,
+                            seedSize == null ? DEFAULT_SEED_SIZE : seedSize,
+                            UserSeedDistribution.parse(seedDistribution),
+                            CHUNK_SIZE))
+                    .build();
+        }
+
         return stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
                 .tasklet(new SaveUserTasklet(userRepository))
                 .build();
     }
 
 
+    /**
+     * jobParameters의 levelUpMode가 sql이면 User entity를 읽지 않고 db에서 한번에 등급 상향을 처리한다.
+     * total이면 orders 없이 user 테이블의 total_amount만 읽어 등급 상향을 처리한다. (먼저 값이 없는 유저의 total_amount를 채운다)
+     * projection이면 entity 대신 (id, level, 주문 금액 합계)만 읽어 등급 상향을 처리한다.
+     * prefilter이면 projection과 같지만, 등급 상향 대상인 유저만 query에서 골라 읽는다.
+     * 그 외에는 기존처럼 reader - processor - writer로 처리한다.
+     */
     @Bean(JOB_NAME + "_userLevelUpStep")
-    public Step userLevelUpStep() throws Exception {
+    @JobScope
+    public Step userLevelUpStep(@Value("#{jobParameters[levelUpMode]}") String levelUpMode) throws Exception {
+        if ("sql".equals(levelUpMode)) {
+            return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                    .tasklet(new SqlLevelUpTasklet(dataSource, CHUNK_SIZE, transitionCounter))
+                    .build();
+        }
+
+        if ("projection".equals(levelUpMode) || "prefilter".equals(levelUpMode)) {
+            return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                    .<UserLevelCandidate, UserLevelCandidate>chunk(CHUNK_SIZE)
+                    .reader(candidateItemReader("prefilter".equals(levelUpMode)))
+                    .processor(candidateItemProcessor())     // 등급이 바뀌는 유저만 넘긴다
+                    .writer(candidateItemWriter())
+                    .build();
+        }
+
+        if ("total".equals(levelUpMode)) {
+            return totalAmountLevelUpStep();
+        }
+
         return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
                 .<User, User>chunk(CHUNK_SIZE)
                 .reader(itemReader())           // db에서 User 정보 가져온다
@@ -171,18 +155,99 @@ public class UserConfiguration {
                 .build();
     }
 
+    /**
+     * total_amount가 없는 유저를 orders에서 채운(UserTotalAmountBackfillTasklet) 뒤, total_amount만 읽어 등급 상향을 처리한다.
+     * 다른 levelUpMode는 User를 orders와 같이 읽어서(혹은 sql로) 계산하므로 total_amount를 사용하지 않는다.
+     */
+    private Step totalAmountLevelUpStep() throws Exception {
+        Step backfillStep = stepBuilderFactory.get(JOB_NAME + "_backfillTotalAmountStep")
+                .tasklet(new UserTotalAmountBackfillTasklet(dataSource, CHUNK_SIZE))
+                .build();
+
+        Step levelUpStep = stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                .<User, User>chunk(CHUNK_SIZE)
+                .reader(totalAmountItemReader())
+                .processor(itemProcessor())
+                .writer(itemWriter())
+                .build();
+
+        Flow flow = new FlowBuilder<Flow>(JOB_NAME + "_totalAmountLevelUpFlow")
+                .start(backfillStep)
+                .next(levelUpStep)
+                .build();
+
+        return stepBuilderFactory.get(JOB_NAME + "_totalAmountLevelUpStep")
+                .flow(flow)
+                .build();
+    }
+
+    // offset 대신 마지막으로 읽은 id 이후부터 읽는다(keyset paging)
     private ItemReader<? extends User> itemReader() throws Exception {
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u")
-                .entityManagerFactory(entityManagerFactory)
+        UserKeysetPagingItemReader itemReader = new UserKeysetPagingItemReader(entityManagerFactory, CHUNK_SIZE, null, null);
+        itemReader.setName(JOB_NAME + "_userItemReader");
+
+        return itemReader;
+    }
+
+    /**
+     * orders를 join/fetch 하지 않고 user 테이블의 total_amount만 읽는다. -> 주문 건수와 상관없이 유저 한 row만 읽는다.
+     * JdbcPagingItemReader는 정렬키(id) 기준으로 마지막으로 읽은 id 이후부터 읽는다.
+     */
+    private ItemReader<? extends User> totalAmountItemReader() throws Exception {
+        JdbcPagingItemReader<User> itemReader = new JdbcPagingItemReaderBuilder<User>()
+                .dataSource(this.dataSource)
+                .rowMapper((rs, rowNum) -> new User(
+                        rs.getLong("id"),
+                        rs.getString("username"),
+                        User.Level.valueOf(rs.getString("level")),
+                        rs.getLong("total_amount"),
+                        rs.getInt("order_count")))
                 .pageSize(CHUNK_SIZE)
-                .name(JOB_NAME + "_userItemReader")
+                .name(JOB_NAME + "_userTotalAmountItemReader")
+                .selectClause("id, username, level, total_amount, order_count")
+                .fromClause("user")
+                .whereClause("total_amount is not null")
+                .sortKeys(Collections.singletonMap("id", Order.ASCENDING))
                 .build();
+
         itemReader.afterPropertiesSet();
 
         return itemReader;
     }
 
+    // onlyLevelUp : 등급 상향 대상만 db에서 골라서 읽는다
+    private UserLevelCandidateItemReader candidateItemReader(boolean onlyLevelUp) {
+        UserLevelCandidateItemReader itemReader = new UserLevelCandidateItemReader(dataSource, CHUNK_SIZE, null, null, onlyLevelUp);
+        itemReader.setName(JOB_NAME + "_userLevelCandidateItemReader");
+
+        return itemReader;
+    }
+
+    private ItemProcessor<UserLevelCandidate, UserLevelCandidate> candidateItemProcessor() {
+        return UserLevelCandidate::levelUp;
+    }
+
+    // 바뀐 등급과 id만 chunk 단위 jdbc batch update, 등급 상향 전 -> 후 건수는 commit 된 뒤에 센다.
+    private ItemWriter<UserLevelCandidate> candidateItemWriter() {
+        JdbcBatchItemWriter<UserLevelCandidate> itemWriter = new JdbcBatchItemWriterBuilder<UserLevelCandidate>()
+                .dataSource(dataSource)
+                .sql("update user set level = :level, updated_date = :updatedDate where id = :id")
+                .itemSqlParameterSourceProvider(candidate -> new MapSqlParameterSource()
+                        .addValue("level", candidate.getLevel().name())
+                        .addValue("updatedDate", Date.valueOf(LocalDate.now()))
+                        .addValue("id", candidate.getId()))
+                .build();
+        itemWriter.afterPropertiesSet();
+
+        return candidates -> {
+            itemWriter.write(candidates);
+
+            LevelUpTransitionCounter chunk = new LevelUpTransitionCounter();
+            candidates.forEach(candidate -> chunk.increment(candidate.getPreviousLevel(), candidate.getLevel()));
+            transitionCounter.addAfterCommit(chunk);
+        };
+    }
+
     // Function<User,User>
     private ItemProcessor<? super User,? extends User> itemProcessor() {
         return user -> {
@@ -194,12 +259,9 @@ public class UserConfiguration {
         };
     }
 
-    // Consumer<User>
+    // Consumer<User>, 등급 상향 후 chunk 단위 jdbc batch update
     private ItemWriter<? super User> itemWriter() {
-        return users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
+        return new UserLevelUpItemWriter(dataSource, transitionCounter);
     }
 
 }
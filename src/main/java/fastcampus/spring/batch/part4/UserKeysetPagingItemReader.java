@@ -0,0 +1,114 @@
+package fastcampus.spring.batch.part4;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * JpaPagingItemReader는 setFirstResult()로 페이지를 넘기기 때문에 offset 만큼 스캔해야 하고, 뒤쪽 페이지로 갈수록 느려진다.
+ * 이 reader는 마지막으로 읽은 id 이후부터 pageSize 만큼 읽는다(keyset paging). -> where u.id > :lastId order by u.id
+ * 마지막으로 읽은 id(lastId)는 ExecutionContext에 저장되어, 재시작 시 그 다음 id부터 다시 읽는다.
+ *
+ * 읽은 User는 EntityManager에서 detach 된 상태로 반환한다.
+ * thread-safe 하지 않다.
+ */
+public class UserKeysetPagingItemReader extends AbstractItemCountingItemStreamItemReader<User> {
+
+    private static final String LAST_ID = "lastId";
+
+    private static final String QUERY =
+            "select u from User u where u.id > :lastId and u.id <= :maxId order by u.id";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int pageSize;
+    private final long startId;
+    private final long maxId;
+
+    private EntityManager entityManager;
+    private List<User> page = Collections.emptyList();
+    private int current = 0;
+    private long lastId;
+
+    /**
+     * @param minId : 읽기 시작할 id(포함), null 이면 처음부터
+     * @param maxId : 마지막 id(포함), null 이면 끝까지
+     */
+    public UserKeysetPagingItemReader(EntityManagerFactory entityManagerFactory, int pageSize, Long minId, Long maxId) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.pageSize = pageSize;
+        this.startId = Objects.isNull(minId) ? Long.MIN_VALUE : minId - 1;
+        this.maxId = Objects.isNull(maxId) ? Long.MAX_VALUE : maxId;
+        this.lastId = this.startId;
+    }
+
+    @Override
+    protected User doRead() throws Exception {
+        if (current >= page.size()) {
+            readPage();
+            if (page.isEmpty()) {
+                return null;
+            }
+        }
+
+        User user = page.get(current++);
+        lastId = user.getId();
+        return user;
+    }
+
+    private void readPage() {
+        page = entityManager.createQuery(QUERY, User.class)
+                .setParameter("lastId", lastId)
+                .setParameter("maxId", maxId)
+                .setMaxResults(pageSize)
+                .getResultList();
+        current = 0;
+
+        // 읽은 entity는 영속성 컨텍스트에서 분리해서, 다른 곳에서 수정해도 reader가 flush 하지 않도록 한다.
+        entityManager.clear();
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        entityManager = entityManagerFactory.createEntityManager();
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (Objects.nonNull(entityManager)) {
+            entityManager.close();
+        }
+        page = Collections.emptyList();
+        current = 0;
+        lastId = startId;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+
+        // offset으로 건너뛰지 않고 저장된 lastId 다음부터 읽는다.
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(LAST_ID))) {
+            lastId = executionContext.getLong(getExecutionContextKey(LAST_ID));
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(LAST_ID), lastId);
+        }
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        // open()에서 lastId로 위치를 복원하므로 item을 하나씩 읽으며 건너뛸 필요가 없다.
+    }
+}
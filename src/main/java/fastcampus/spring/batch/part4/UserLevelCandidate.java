@@ -0,0 +1,29 @@
+package fastcampus.spring.batch.part4;
+
+import lombok.Value;
+
+import java.util.Objects;
+
+/**
+ * 등급 상향에 필요한 값(id, 읽었을때의 등급, 현재 등급, 주문 금액 합계)만 가진 불변 객체.
+ * User entity 대신 사용하면 orders 목록이나 영속성 컨텍스트 없이 유저 한명당 객체 하나만 만든다.
+ */
+@Value
+public class UserLevelCandidate {
+
+    long id;
+    User.Level previousLevel;   // db에서 읽었을때의 등급, 등급 상향 전 -> 후 건수를 셀때 사용한다.
+    User.Level level;
+    long totalAmount;
+
+    /**
+     * @return 등급이 바뀌는 경우 바뀐 등급의 candidate, 바뀌지 않으면 null
+     */
+    public UserLevelCandidate levelUp() {
+        User.Level nextLevel = User.Level.nextLevelOf(level, totalAmount);
+        if (Objects.isNull(nextLevel) || nextLevel == level) {
+            return null;
+        }
+        return new UserLevelCandidate(id, level, nextLevel, totalAmount);
+    }
+}
@@ -0,0 +1,126 @@
+package fastcampus.spring.batch.part4;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * User entity 대신 (id, level, sum(orders.amount))만 jdbc로 읽는다.
+ * UserKeysetPagingItemReader와 같이 마지막으로 읽은 id 이후부터 pageSize 만큼 읽고(keyset paging), lastId를 ExecutionContext에 저장한다.
+ * thread-safe 하지 않다.
+ */
+public class UserLevelCandidateItemReader extends AbstractItemCountingItemStreamItemReader<UserLevelCandidate> {
+
+    private static final String LAST_ID = "lastId";
+
+    private static final String TOTAL_AMOUNT = "coalesce(sum(o.amount), 0)";
+
+    private static final String SELECT_CLAUSE =
+            "select u.id, u.level, " + TOTAL_AMOUNT + " as total_amount " +
+            "from user u left join orders o on o.user_id = u.id " +
+            "where u.id > :lastId and u.id <= :maxId " +
+            "group by u.id, u.level ";
+
+    private static final String ORDER_CLAUSE = "order by u.id limit :pageSize";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final String query;
+    private final int pageSize;
+    private final long startId;
+    private final long maxId;
+
+    private List<UserLevelCandidate> page = Collections.emptyList();
+    private int current = 0;
+    private long lastId;
+
+    /**
+     * @param minId : 읽기 시작할 id(포함), null 이면 처음부터
+     * @param maxId : 마지막 id(포함), null 이면 끝까지
+     */
+    public UserLevelCandidateItemReader(DataSource dataSource, int pageSize, Long minId, Long maxId) {
+        this(dataSource, pageSize, minId, maxId, false);
+    }
+
+    /**
+     * @param onlyLevelUp : true 이면 등급 상향 대상인 유저만 읽는다.
+     *                    User.Level로 만든 조건을 having 절에 넣기 때문에, 상향 대상이 아닌 유저는 db 밖으로 나오지 않는다.
+     */
+    public UserLevelCandidateItemReader(DataSource dataSource, int pageSize, Long minId, Long maxId, boolean onlyLevelUp) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.query = onlyLevelUp
+                ? SELECT_CLAUSE + "having " + User.Level.availableLevelUpSql("u.level", TOTAL_AMOUNT) + " " + ORDER_CLAUSE
+                : SELECT_CLAUSE + ORDER_CLAUSE;
+        this.pageSize = pageSize;
+        this.startId = Objects.isNull(minId) ? Long.MIN_VALUE : minId - 1;
+        this.maxId = Objects.isNull(maxId) ? Long.MAX_VALUE : maxId;
+        this.lastId = this.startId;
+    }
+
+    @Override
+    protected UserLevelCandidate doRead() throws Exception {
+        if (current >= page.size()) {
+            readPage();
+            if (page.isEmpty()) {
+                return null;
+            }
+        }
+
+        UserLevelCandidate candidate = page.get(current++);
+        lastId = candidate.getId();
+        return candidate;
+    }
+
+    private void readPage() {
+        page = jdbcTemplate.query(query, new MapSqlParameterSource()
+                        .addValue("lastId", lastId)
+                        .addValue("maxId", maxId)
+                        .addValue("pageSize", pageSize),
+                (rs, rowNum) -> {
+                    User.Level level = User.Level.valueOf(rs.getString("level"));
+                    return new UserLevelCandidate(rs.getLong("id"), level, level, rs.getLong("total_amount"));
+                });
+        current = 0;
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        page = Collections.emptyList();
+        current = 0;
+        lastId = startId;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+
+        // offset으로 건너뛰지 않고 저장된 lastId 다음부터 읽는다.
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(LAST_ID))) {
+            lastId = executionContext.getLong(getExecutionContextKey(LAST_ID));
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(LAST_ID), lastId);
+        }
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        // open()에서 lastId로 위치를 복원하므로 item을 하나씩 읽으며 건너뛸 필요가 없다.
+    }
+}
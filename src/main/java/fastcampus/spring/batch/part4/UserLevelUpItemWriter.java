@@ -0,0 +1,64 @@
+package fastcampus.spring.batch.part4;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.util.List;
+
+/**
+ * 등급 상향(levelUp)은 메모리에서 처리하고, 결과는 chunk 단위로 한번의 jdbc batch update로 저장한다.
+ * userRepository.save()는 user 마다 merge(select + update)가 실행되지만, 이 writer는 chunk 당 update 1번(batch)만 실행한다.
+ * mysql에서는 rewriteBatchedStatements=true 설정으로 batch가 하나의 multi-statement 로 전송된다.
+ *
+ * reader가 읽은 User가 영속상태로 남아있으면 reader의 EntityManager가 다시 flush할 수 있으므로 reader는 transacted(false)로 사용한다.
+ */
+public class UserLevelUpItemWriter implements ItemWriter<User> {
+
+    private final JdbcBatchItemWriter<User> delegate;
+    private final LevelUpTransitionCounter transitionCounter;
+
+    public UserLevelUpItemWriter(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * @param transitionCounter : commit 된 chunk의 등급 상향 전 -> 후 건수를 센다. (LevelUpJobExecutionListener가 출력)
+     *                            rollback 된 chunk는 다시 쓰므로 세지 않는다.
+     */
+    public UserLevelUpItemWriter(DataSource dataSource, LevelUpTransitionCounter transitionCounter) {
+        this.transitionCounter = transitionCounter;
+        this.delegate = new JdbcBatchItemWriterBuilder<User>()
+                .dataSource(dataSource)
+                .sql("update user set level = :level, updated_date = :updatedDate where id = :id")
+                .itemSqlParameterSourceProvider(user -> new MapSqlParameterSource()
+                        .addValue("level", user.getLevel().name())
+                        .addValue("updatedDate", Date.valueOf(user.getUpdatedDate()))
+                        .addValue("id", user.getId()))
+                .build();
+        // named parameter 사용 여부(usingNamedParameters)가 여기서 정해진다.
+        this.delegate.afterPropertiesSet();
+    }
+
+    @Override
+    public void write(List<? extends User> users) throws Exception {
+        User.Level[] before = new User.Level[users.size()];
+        for (int i = 0; i < users.size(); i++) {
+            before[i] = users.get(i).getLevel();
+            users.get(i).levelUp();
+        }
+
+        delegate.write(users);
+
+        if (transitionCounter != null) {
+            LevelUpTransitionCounter chunk = new LevelUpTransitionCounter();
+            for (int i = 0; i < users.size(); i++) {
+                chunk.increment(before[i], users.get(i).getLevel());
+            }
+            transitionCounter.addAfterCommit(chunk);
+        }
+    }
+}
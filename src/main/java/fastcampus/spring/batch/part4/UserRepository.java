@@ -2,9 +2,11 @@ package fastcampus.spring.batch.part4;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public interface UserRepository extends JpaRepository<User, Long> {
@@ -12,6 +14,12 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Collection<User> findALlByUpdatedDate(LocalDate now);
 
+    long countByUpdatedDate(LocalDate updatedDate);
+
+    // [level, count]
+    @Query(value = "select u.level, count(u) from User u where u.updatedDate = :updatedDate group by u.level")
+    List<Object[]> countLevelByUpdatedDate(@Param("updatedDate") LocalDate updatedDate);
+
     @Query(value = "select min(u.id) from User u")
     long findMinId();
 
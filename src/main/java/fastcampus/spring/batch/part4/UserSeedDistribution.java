@@ -0,0 +1,106 @@
+package fastcampus.spring.batch.part4;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 테스트 데이터의 주문 금액 분포.
+ * "금액:비율,금액:비율,..." 형식으로 받는다. ex) 1000:1,200000:1,300000:1,500000:1 -> SaveUserTasklet과 같은 4개 구간을 같은 비율로
+ * 금액 대신 "최소-최대"를 쓰면 그 구간 안에서 고르게 금액을 정한다. ex) 0-199999:3,200000-600000:1
+ *
+ * seed가 없으면 index 번째 유저가 어느 구간에 속할지는 비율대로 돌아가면서 정한다(round-robin). -> 구간별 유저 수가 비율과 정확히 맞는다.
+ * seed가 있으면 (seed, index)의 hash로 구간을 정한다. -> 비율은 근사값이 되지만 구간이 섞인다.
+ * 어느 쪽이든 index만으로 값이 정해지므로, 몇번을 만들어도, 어디서부터 다시 만들어도, 여러 쓰레드가 나눠 만들어도 같은 데이터가 나온다.
+ */
+public class UserSeedDistribution {
+
+    public static final String DEFAULT = "1000:1,200000:1,300000:1,500000:1";
+
+    private static final int MAX_TOTAL_WEIGHT = 10_000;
+    private static final LocalDate FIRST_CREATED_DATE = LocalDate.of(2020, 11, 1);
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final int[] minAmounts;
+    private final int[] maxAmounts;
+    private final int[] tierOfSlot;      // 비율의 합 만큼의 slot, slot마다 구간 번호
+    private final Long seed;
+
+    private UserSeedDistribution(int[] minAmounts, int[] maxAmounts, int[] tierOfSlot, Long seed) {
+        this.minAmounts = minAmounts;
+        this.maxAmounts = maxAmounts;
+        this.tierOfSlot = tierOfSlot;
+        this.seed = seed;
+    }
+
+    public static UserSeedDistribution parse(String distribution) {
+        return parse(distribution, null);
+    }
+
+    public static UserSeedDistribution parse(String distribution, Long seed) {
+        if (!StringUtils.hasText(distribution)) {
+            distribution = DEFAULT;
+        }
+
+        List<int[]> amounts = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+
+        for (String tier : distribution.split(",")) {
+            String[] amountAndWeight = tier.trim().split(":");
+            Assert.isTrue(amountAndWeight.length == 2, "분포는 금액:비율 형식이어야 합니다 : " + tier);
+
+            String[] range = amountAndWeight[0].trim().split("-");
+            int minAmount = Integer.parseInt(range[0].trim());
+            int maxAmount = range.length > 1 ? Integer.parseInt(range[1].trim()) : minAmount;
+            int weight = Integer.parseInt(amountAndWeight[1].trim());
+            Assert.isTrue(minAmount >= 0 && minAmount <= maxAmount, "금액은 0 이상, 최소 <= 최대 여야 합니다 : " + tier);
+            Assert.isTrue(weight > 0, "비율은 1 이상이어야 합니다 : " + tier);
+
+            for (int i = 0; i < weight; i++) {
+                slots.add(amounts.size());
+            }
+            amounts.add(new int[]{minAmount, maxAmount});
+        }
+        Assert.isTrue(slots.size() <= MAX_TOTAL_WEIGHT, "비율의 합은 " + MAX_TOTAL_WEIGHT + " 이하여야 합니다 : " + distribution);
+
+        return new UserSeedDistribution(
+                amounts.stream().mapToInt(x -> x[0]).toArray(),
+                amounts.stream().mapToInt(x -> x[1]).toArray(),
+                slots.stream().mapToInt(Integer::intValue).toArray(),
+                seed);
+    }
+
+    public int tierOf(long index) {
+        if (seed == null) {
+            return tierOfSlot[(int) (index % tierOfSlot.length)];
+        }
+        return tierOfSlot[(int) Math.floorMod(hash(index, 0), (long) tierOfSlot.length)];
+    }
+
+    public int amountOf(long index) {
+        int tier = tierOf(index);
+        int range = maxAmounts[tier] - minAmounts[tier];
+        if (range == 0) {
+            return minAmounts[tier];
+        }
+        return minAmounts[tier] + (int) Math.floorMod(hash(index, 1), range + 1L);
+    }
+
+    // SaveUserTasklet처럼 구간마다 주문일을 하루씩 다르게 한다.
+    public LocalDate createdDateOf(long index) {
+        return FIRST_CREATED_DATE.plusDays(tierOf(index));
+    }
+
+    /**
+     * (seed, index, salt)로 정해지는 난수. Random 객체를 만들지 않고 splitmix64의 섞기 함수만 사용한다.
+     */
+    private long hash(long index, int salt) {
+        long z = (seed == null ? 0 : seed) + (index * 2 + salt + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,67 @@
+package fastcampus.spring.batch.part4;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * total_amount, order_count가 없는(null) 유저만 orders에서 계산해서 채운다. (컬럼이 생기기 전에 저장된 유저)
+ * 주문을 저장할 때 같은 트랜잭션에서 값을 갱신하므로(User.addOrder(), BulkSaveUserTasklet) 값이 있는 유저는 다시 계산하지 않는다.
+ * -> 한번 채운 뒤에는 null인 유저가 없어서 id 범위를 조회하는 query 한번으로 끝난다.
+ * SqlLevelUpTasklet과 같이 execute() 한번에 id 범위 하나를 처리하고, 다음 범위를 StepExecutionContext에 저장한다.
+ */
+public class UserTotalAmountBackfillTasklet implements Tasklet {
+
+    private static final String CURRENT_ID = "currentId";
+    private static final String MAX_ID = "maxId";
+
+    private static final String BACKFILL_SQL =
+            "update user u set " +
+            "total_amount = (select coalesce(sum(o.amount), 0) from orders o where o.user_id = u.id), " +
+            "order_count = (select count(*) from orders o where o.user_id = u.id) " +
+            "where u.id between :startId and :endId and u.total_amount is null";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+
+    public UserTotalAmountBackfillTasklet(DataSource dataSource, int chunkSize) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+
+        if (!executionContext.containsKey(CURRENT_ID)) {
+            Map<String, Object> range = jdbcTemplate.queryForMap(
+                    "select min(id) as min_id, max(id) as max_id from user where total_amount is null",
+                    new MapSqlParameterSource());
+            if (range.get("min_id") == null) {
+                return RepeatStatus.FINISHED;
+            }
+            executionContext.putLong(CURRENT_ID, ((Number) range.get("min_id")).longValue());
+            executionContext.putLong(MAX_ID, ((Number) range.get("max_id")).longValue());
+        }
+
+        long startId = executionContext.getLong(CURRENT_ID);
+        long maxId = executionContext.getLong(MAX_ID);
+        long endId = Math.min(startId + chunkSize - 1, maxId);
+
+        int writeCount = jdbcTemplate.update(BACKFILL_SQL, new MapSqlParameterSource()
+                .addValue("startId", startId)
+                .addValue("endId", endId));
+        contribution.incrementWriteCount(writeCount);
+
+        executionContext.putLong(CURRENT_ID, endId + 1);
+
+        return endId >= maxId ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+}
@@ -0,0 +1,130 @@
+package fastcampus.spring.batch.part5;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * JdbcPagingItemReader + group by는 페이지마다 한달치 orders를 다시 group by 한다.
+ * 이 reader는 기간 내의 orders를 created_date 순서로 한번만 읽으면서(cursor) 일별 합계를 바로 계산한다.
+ * 날짜가 바뀌는 row를 만나면 그 전날의 합계를 mapper로 만든 item(OrderStatistics 등)으로 반환한다. -> 메모리에는 하루치 합계 하나만 있다.
+ *
+ * mysql은 fetchSize를 Integer.MIN_VALUE로 주면 결과를 한번에 받지 않고 row 단위로 streaming 한다.
+ * 마지막으로 반환한 날짜를 ExecutionContext에 저장하므로, 재시작 시 그 다음 날짜부터 다시 읽는다.
+ */
+public class DailyOrderStatisticsItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T> {
+
+    private static final String LAST_DATE = "lastDate";
+
+    private static final String QUERY =
+            "select created_date, amount from orders " +
+            "where created_date >= ? and created_date <= ? " +
+            "order by created_date";
+
+    private final DataSource dataSource;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int fetchSize;
+    private final boolean mysql;
+    private final BiFunction<LocalDate, Long, T> mapper;
+
+    private JdbcCursorItemReader<OrderRow> delegate;
+    private OrderRow pending;               // 다음 날짜의 첫 row
+    private LocalDate lastDate;
+
+    /**
+     * @param mapper : (날짜, 그날의 금액 합계) -> item
+     */
+    public DailyOrderStatisticsItemReader(DataSource dataSource, LocalDate startDate, LocalDate endDate, int fetchSize,
+                                          BiFunction<LocalDate, Long, T> mapper) throws MetaDataAccessException {
+        this.dataSource = dataSource;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.fetchSize = fetchSize;
+        this.mysql = DatabaseType.fromMetaData(dataSource) == DatabaseType.MYSQL;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public T read() throws Exception {
+        OrderRow row = Objects.nonNull(pending) ? pending : delegate.read();
+        pending = null;
+        if (Objects.isNull(row)) {
+            return null;
+        }
+
+        LocalDate date = row.date;
+        long amount = row.amount;
+
+        while ((row = delegate.read()) != null) {
+            if (!row.date.equals(date)) {
+                pending = row;
+                break;
+            }
+            amount += row.amount;
+        }
+
+        lastDate = date;
+        return mapper.apply(date, amount);
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        // 재시작이면 이미 반환한 날짜 다음날부터 읽는다.
+        LocalDate from = startDate;
+        if (executionContext.containsKey(getExecutionContextKey(LAST_DATE))) {
+            lastDate = LocalDate.ofEpochDay(executionContext.getLong(getExecutionContextKey(LAST_DATE)));
+            from = lastDate.plusDays(1);
+        }
+
+        delegate = new JdbcCursorItemReaderBuilder<OrderRow>()
+                .name("dailyOrderStatisticsCursor")
+                .dataSource(dataSource)
+                .sql(QUERY)
+                .queryArguments(Arrays.asList(java.sql.Date.valueOf(from), java.sql.Date.valueOf(endDate)))
+                .rowMapper((rs, rowNum) -> new OrderRow(rs.getDate(1).toLocalDate(), rs.getLong(2)))
+                .fetchSize(mysql ? Integer.MIN_VALUE : fetchSize)
+                .verifyCursorPosition(!mysql)   // mysql streaming 결과는 cursor 위치(getRow())를 확인할 수 없다
+                .saveState(false)               // 재시작 위치는 lastDate로 관리한다
+                .build();
+        delegate.open(new ExecutionContext());
+        pending = null;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (Objects.nonNull(lastDate)) {
+            executionContext.putLong(getExecutionContextKey(LAST_DATE), lastDate.toEpochDay());
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (Objects.nonNull(delegate)) {
+            delegate.close();
+        }
+        delegate = null;
+        pending = null;
+    }
+
+    private static class OrderRow {
+        private final LocalDate date;
+        private final long amount;
+
+        private OrderRow(LocalDate date, long amount) {
+            this.date = date;
+            this.amount = amount;
+        }
+    }
+}
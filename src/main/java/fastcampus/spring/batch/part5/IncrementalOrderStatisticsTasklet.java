@@ -0,0 +1,161 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 지난 실행 이후 새로 들어온 orders만 일별로 합계를 구해 order_daily_statistics에 더한다.
+ * 시작 위치(watermark)는 order_daily_statistics.last_order_id의 최대값이다. 요약과 watermark가 같은 테이블에 있어서 한 트랜잭션으로 같이 커밋된다.
+ * -> 매일 실행해도 한달치가 아니라 그날 새로 들어온 주문만큼만 읽는다.
+ *
+ * id는 insert 순서로 받지만 commit 순서는 다를 수 있다. (먼저 id를 받은 트랜잭션이 늦게 commit)
+ * 그래서 watermark 아래 safetyWindow 개의 id를 다시 읽고, 이미 더한 주문(order_statistics_processed_order)은 건너뛴다.
+ * -> id를 받고 commit 하기까지 다른 주문이 safetyWindow 개 이상 들어오지 않으면 늦게 commit 된 주문도 빠지지 않는다.
+ * 더한 주문 id는 다음 실행의 window 아래가 되면 지운다.
+ *
+ * 한번의 execute()가 orders.id 범위 [currentId, currentId + chunkSize - 1] 하나를 처리하고 CONTINUABLE을 반환한다. (SqlLevelUpTasklet과 같은 방식)
+ * 범위마다 아직 더하지 않은 주문 id를 먼저 기록하고, 방금 기록한 주문만 합계를 구한다. (읽는 중에 commit 된 주문이 한쪽에만 들어가지 않는다)
+ * orders를 지우고 다시 만들면(id 재사용) order_daily_statistics, order_statistics_processed_order도 같이 비워야 한다.
+ * write count는 요약에 더한 주문 건수이다.
+ */
+@Slf4j
+public class IncrementalOrderStatisticsTasklet implements Tasklet {
+
+    private static final String CURRENT_ID = "currentId";
+    private static final String MAX_ID = "maxId";
+
+    private static final String MARK_PROCESSED_SQL =
+            "insert into order_statistics_processed_order (order_id, step_execution_id) " +
+            "select o.id, ? from orders o where o.id between ? and ? and o.created_date is not null " +
+            "and not exists (select 1 from order_statistics_processed_order p where p.order_id = o.id)";
+
+    private static final String DAILY_AMOUNT_SQL =
+            "select o.created_date, sum(o.amount), count(*), max(o.id) from order_statistics_processed_order p " +
+            "join orders o on o.id = p.order_id " +
+            "where p.order_id between ? and ? and p.step_execution_id = ? group by o.created_date";
+
+    // window를 다시 읽으면 더 작은 id가 더해질 수 있으므로 last_order_id는 줄이지 않는다.
+    private static final String UPDATE_SQL =
+            "update order_daily_statistics set total_amount = total_amount + ?, order_count = order_count + ?, last_order_id = greatest(last_order_id, ?) " +
+            "where statistics_date = ?";
+
+    private static final String INSERT_SQL =
+            "insert into order_daily_statistics (statistics_date, total_amount, order_count, last_order_id) values (?, ?, ?, ?)";
+
+    private static final String WATERMARK_SQL = "select coalesce(max(last_order_id), 0) from order_daily_statistics";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+    private final int safetyWindow;
+
+    /**
+     * @param safetyWindow : watermark 아래에서 다시 읽을 id 개수, id를 받고 commit 하기까지 들어올 수 있는 주문 수보다 커야 한다.
+     */
+    public IncrementalOrderStatisticsTasklet(DataSource dataSource, int chunkSize, int safetyWindow) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.chunkSize = chunkSize;
+        this.safetyWindow = safetyWindow;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        StepExecution stepExecution = contribution.getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        // 최초 실행 시에만 범위를 조회한다. 재시작 시에는 저장된 범위를 그대로 사용한다.
+        if (!executionContext.containsKey(CURRENT_ID)) {
+            long watermark = jdbcTemplate.queryForObject(WATERMARK_SQL, Long.class);
+            long startId = windowStart(watermark);
+            long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from orders", Long.class);
+            log.info("주문 통계 watermark : {}, 주문 id 범위 : {} ~ {}", watermark, startId, maxId);
+
+            executionContext.putLong(CURRENT_ID, startId);
+            executionContext.putLong(MAX_ID, maxId);
+        }
+
+        long startId = executionContext.getLong(CURRENT_ID);
+        long maxId = executionContext.getLong(MAX_ID);
+        if (startId > maxId) {
+            prune();
+            return RepeatStatus.FINISHED;
+        }
+        long endId = Math.min(startId + chunkSize - 1, maxId);
+
+        int marked = jdbcTemplate.update(MARK_PROCESSED_SQL, stepExecution.getId(), startId, endId);
+        if (marked > 0) {
+            List<DailyAmount> dailyAmounts = jdbcTemplate.query(DAILY_AMOUNT_SQL,
+                    (rs, rowNum) -> new DailyAmount(rs.getDate(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)),
+                    startId, endId, stepExecution.getId());
+            merge(dailyAmounts);
+        }
+
+        contribution.incrementWriteCount(marked);
+        executionContext.putLong(CURRENT_ID, endId + 1);
+
+        if (endId >= maxId) {
+            prune();
+            return RepeatStatus.FINISHED;
+        }
+        return RepeatStatus.CONTINUABLE;
+    }
+
+    private long windowStart(long watermark) {
+        return Math.max(1, watermark - safetyWindow + 1);
+    }
+
+    // 다음 실행의 window보다 아래에 있는 id는 다시 읽지 않으므로 지운다.
+    private void prune() {
+        long nextStartId = windowStart(jdbcTemplate.queryForObject(WATERMARK_SQL, Long.class));
+        int deleted = jdbcTemplate.update("delete from order_statistics_processed_order where order_id < ?", nextStartId);
+        log.debug("더한 주문 id {}건 정리 (id < {})", deleted, nextStartId);
+    }
+
+    // 이미 있는 날짜는 더하고, 없는 날짜는 새로 만든다.
+    private void merge(List<DailyAmount> dailyAmounts) {
+        if (dailyAmounts.isEmpty()) {
+            return;
+        }
+
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, dailyAmounts.stream()
+                .map(x -> new Object[]{x.amount, x.orderCount, x.lastOrderId, x.date})
+                .collect(Collectors.toList()));
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                DailyAmount x = dailyAmounts.get(i);
+                inserts.add(new Object[]{x.date, x.amount, x.orderCount, x.lastOrderId});
+            }
+        }
+
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+        }
+    }
+
+    private static class DailyAmount {
+        private final Date date;
+        private final long amount;
+        private final long orderCount;
+        private final long lastOrderId;
+
+        private DailyAmount(Date date, long amount, long orderCount, long lastOrderId) {
+            this.date = date;
+            this.amount = amount;
+            this.orderCount = orderCount;
+            this.lastOrderId = lastOrderId;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 기간 내의 orders를 한번만 읽어서(cursor) 여러 단위의 통계를 만들고, 통계마다 csv 파일 하나씩 쓴다.
+ * - {기간}_일별_주문_통계.csv, {기간}_주별_주문_통계.csv(ISO 주), {기간}_월별_주문_통계.csv
+ *   : 주문 건수, 합계, 최소, 최대, 평균
+ * - {기간}_상품별_상위_{N}.csv : 주문 금액 합계 상위 N개 상품
+ * - {기간}_전체_주문_통계.csv
+ *
+ * 단위마다 group by 쿼리를 따로 실행하지 않으므로 orders는 한번만 읽는다.
+ * 통계는 메모리에서 계산하고 마지막에 파일을 쓰기 때문에, 재시작하면 처음부터 다시 계산한다.
+ */
+@Slf4j
+public class MultiOrderStatisticsTasklet implements Tasklet {
+
+    private static final String QUERY =
+            "select created_date, item_name, amount from orders " +
+            "where created_date >= ? and created_date <= ? " +
+            "order by created_date";
+
+    private static final String BUCKET_HEADER = "order_count, total_amount, min_amount, max_amount, avg_amount";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int topN;
+    private final String outputDirectory;
+
+    public MultiOrderStatisticsTasklet(DataSource dataSource, LocalDate startDate, LocalDate endDate, int topN, String outputDirectory) throws Exception {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // mysql은 fetchSize가 Integer.MIN_VALUE 이면 row 단위로 streaming 한다.
+        this.jdbcTemplate.setFetchSize(DatabaseType.fromMetaData(dataSource) == DatabaseType.MYSQL ? Integer.MIN_VALUE : 1_000);
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.topN = topN;
+        this.outputDirectory = outputDirectory;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        OrderStatisticsAggregates aggregates = new OrderStatisticsAggregates();
+
+        jdbcTemplate.query(QUERY, (RowCallbackHandler) rs -> {
+            aggregates.add(rs.getDate(1).toLocalDate(), rs.getString(2), rs.getInt(3));
+            contribution.incrementReadCount();
+        }, Date.valueOf(startDate), Date.valueOf(endDate));
+
+        Files.createDirectories(Paths.get(outputDirectory));
+        String prefix = String.format("%s_%s", startDate, endDate);
+
+        int lines = 0;
+        lines += writeBuckets(prefix + "_일별_주문_통계.csv", "date", aggregates.getDaily());
+        lines += writeBuckets(prefix + "_주별_주문_통계.csv", "week", aggregates.getWeekly());
+        lines += writeBuckets(prefix + "_월별_주문_통계.csv", "month", aggregates.getMonthly());
+        lines += writeTopItems(prefix + "_상품별_상위_" + topN + ".csv", aggregates.topItems(topN));
+        lines += writeBucket(prefix + "_전체_주문_통계.csv", aggregates.getTotal());
+        contribution.incrementWriteCount(lines);
+
+        log.info("orders {}건으로 통계 파일 {}줄 생성", contribution.getReadCount(), lines);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    private int writeBuckets(String fileName, String keyName, Map<?, OrderStatisticsAggregates.Bucket> buckets) throws IOException {
+        try (BufferedWriter writer = newWriter(fileName)) {
+            writer.write(keyName + ", " + BUCKET_HEADER);
+            for (Map.Entry<?, OrderStatisticsAggregates.Bucket> entry : buckets.entrySet()) {
+                writer.newLine();
+                writer.write(entry.getKey() + "," + format(entry.getValue()));
+            }
+        }
+        return buckets.size();
+    }
+
+    private int writeTopItems(String fileName, List<Map.Entry<String, OrderStatisticsAggregates.Bucket>> topItems) throws IOException {
+        try (BufferedWriter writer = newWriter(fileName)) {
+            writer.write("rank, item_name, order_count, total_amount");
+            int rank = 1;
+            for (Map.Entry<String, OrderStatisticsAggregates.Bucket> entry : topItems) {
+                writer.newLine();
+                writer.write(rank++ + "," + entry.getKey() + "," + entry.getValue().getCount() + "," + entry.getValue().getSum());
+            }
+        }
+        return topItems.size();
+    }
+
+    private int writeBucket(String fileName, OrderStatisticsAggregates.Bucket bucket) throws IOException {
+        try (BufferedWriter writer = newWriter(fileName)) {
+            writer.write(BUCKET_HEADER);
+            if (bucket.getCount() > 0) {
+                writer.newLine();
+                writer.write(format(bucket));
+            }
+        }
+        return bucket.getCount() > 0 ? 1 : 0;
+    }
+
+    private String format(OrderStatisticsAggregates.Bucket bucket) {
+        return bucket.getCount() + "," + bucket.getSum() + "," + bucket.getMin() + "," + bucket.getMax() + "," + bucket.getAvg();
+    }
+
+    private BufferedWriter newWriter(String fileName) throws IOException {
+        Path path = Paths.get(outputDirectory, fileName);
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,31 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+/**
+ * OrderStatistics의 숫자 버전.
+ * 금액을 문자열(rs.getString(sum))이 아닌 long으로, 날짜를 LocalDate가 아닌 epoch day(1970-01-01 부터의 일수)로 가진다.
+ * -> 금액 합계가 커져도 자릿수/형식이 db 드라이버에 따라 달라지지 않고, item 하나당 객체 하나만 만든다.
+ */
+@Getter
+public class OrderAmountStatistics {
+
+    private final long amount;
+
+    private final int epochDay;
+
+    public OrderAmountStatistics(long amount, int epochDay) {
+        this.amount = amount;
+        this.epochDay = epochDay;
+    }
+
+    public OrderAmountStatistics(long amount, LocalDate date) {
+        this(amount, (int) date.toEpochDay());
+    }
+
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+}
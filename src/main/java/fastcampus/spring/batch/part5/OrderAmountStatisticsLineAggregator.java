@@ -0,0 +1,61 @@
+package fastcampus.spring.batch.part5;
+
+import org.springframework.batch.item.file.transform.LineAggregator;
+
+/**
+ * OrderAmountStatistics를 "금액,yyyy-MM-dd" 한줄로 만든다.
+ * BeanWrapperFieldExtractor + DelimitedLineAggregator와 같은 결과지만, reflection 없이 필드를 직접 읽고
+ * 재사용하는 StringBuilder 하나에 숫자와 날짜를 바로 쓴다. (LocalDate, 중간 문자열을 만들지 않는다)
+ *
+ * StringBuilder를 재사용하므로 thread-safe 하지 않다. FlatFileItemWriter 하나에 하나씩 사용한다.
+ */
+public class OrderAmountStatisticsLineAggregator implements LineAggregator<OrderAmountStatistics> {
+
+    private final StringBuilder line = new StringBuilder(32);
+
+    @Override
+    public String aggregate(OrderAmountStatistics item) {
+        line.setLength(0);
+        line.append(item.getAmount()).append(',');
+        appendDate(line, item.getEpochDay());
+
+        return line.toString();
+    }
+
+    /**
+     * epoch day -> yyyy-MM-dd (LocalDate.toString()과 같은 형식)
+     * 년/월/일 계산은 LocalDate.ofEpochDay()와 같은 그레고리력 계산이다. (400년 주기)
+     */
+    static void appendDate(StringBuilder line, long epochDay) {
+        long z = epochDay + 719_468;                                 // 0000-03-01 기준
+        long era = (z >= 0 ? z : z - 146_096) / 146_097;
+        long dayOfEra = z - era * 146_097;                           // [0, 146096]
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;                         // 3월 = 0
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0 || year > 9_999) {
+            // LocalDate는 4자리가 넘는 년도에 부호를 붙인다. 드문 경우라 그대로 위임한다.
+            line.append(java.time.LocalDate.ofEpochDay(epochDay));
+            return;
+        }
+
+        appendPadded(line, (int) year, 4);
+        line.append('-');
+        appendPadded(line, month, 2);
+        line.append('-');
+        appendPadded(line, day, 2);
+    }
+
+    private static void appendPadded(StringBuilder line, int value, int width) {
+        for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+            if (value < limit) {
+                line.append('0');
+            }
+        }
+        line.append(value);
+    }
+}
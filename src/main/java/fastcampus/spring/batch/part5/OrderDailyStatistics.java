@@ -0,0 +1,30 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+/**
+ * 일별 주문 통계 요약 테이블. IncrementalOrderStatisticsTasklet이 새 주문만 더해서 갱신한다.
+ * lastOrderId : 그 날짜에 더해진 가장 큰 orders.id, 모든 날짜 중 가장 큰 값이 watermark가 된다. (다음 실행은 그 아래 safety window부터 읽는다)
+ * (테이블은 jpa ddl-auto로 만든다)
+ */
+@Entity
+@Getter
+@NoArgsConstructor
+@Table(name = "order_daily_statistics")
+public class OrderDailyStatistics {
+
+    @Id
+    private LocalDate statisticsDate;
+
+    private long totalAmount;
+
+    private long orderCount;
+
+    private long lastOrderId;
+}
@@ -0,0 +1,44 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * [startDate, endDate] 기간을 sliceDays 일씩 나눈다. gridSize는 사용하지 않는다. (기간과 sliceDays로 partition 수가 정해진다)
+ * 각 partition은 자신의 기간(startDate, endDate)과, 결과를 쓸 파일(sliceFile)을 ExecutionContext로 받는다.
+ * sliceFile 이름은 시작일(yyyy-MM-dd)이라 이름 순으로 정렬하면 날짜 순서가 된다.
+ */
+@RequiredArgsConstructor
+public class OrderDatePartitioner implements Partitioner {
+
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int sliceDays;
+    private final String sliceDirectory;
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> result = new HashMap<>();
+
+        for (LocalDate start = startDate; !start.isAfter(endDate); start = start.plusDays(sliceDays)) {
+            LocalDate end = start.plusDays(sliceDays - 1);
+            if (end.isAfter(endDate)) {
+                end = endDate;
+            }
+
+            ExecutionContext value = new ExecutionContext();
+            value.putString("startDate", start.toString());
+            value.putString("endDate", end.toString());
+            value.putString("sliceFile", Paths.get(sliceDirectory, start + ".csv").toString());
+            result.put("partition" + start, value);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package fastcampus.spring.batch.part5;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.IsoFields;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * orders를 한 row씩 넣으면 일별, ISO 주별, 월별, 상품별, 전체 통계(건수, 합계, 최소, 최대, 평균)를 한번에 계산한다.
+ * 기간이 길어져도 메모리는 날짜/주/월 수와 상품 수 만큼만 사용한다. (주문 row는 저장하지 않는다)
+ * thread-safe 하지 않다.
+ */
+public class OrderStatisticsAggregates {
+
+    private final Map<LocalDate, Bucket> daily = new TreeMap<>();
+    private final Map<String, Bucket> weekly = new TreeMap<>();
+    private final Map<YearMonth, Bucket> monthly = new TreeMap<>();
+    private final Map<String, Bucket> items = new HashMap<>();
+    private final Bucket total = new Bucket();
+
+    // 같은 날짜의 row가 연속으로 들어오므로(order by created_date) 마지막 날짜의 bucket은 다시 찾지 않는다.
+    private LocalDate lastDate;
+    private Bucket lastDaily;
+    private Bucket lastWeekly;
+    private Bucket lastMonthly;
+
+    public void add(LocalDate date, String itemName, int amount) {
+        if (!date.equals(lastDate)) {
+            lastDate = date;
+            lastDaily = daily.computeIfAbsent(date, x -> new Bucket());
+            lastWeekly = weekly.computeIfAbsent(isoWeek(date), x -> new Bucket());
+            lastMonthly = monthly.computeIfAbsent(YearMonth.from(date), x -> new Bucket());
+        }
+
+        lastDaily.add(amount);
+        lastWeekly.add(amount);
+        lastMonthly.add(amount);
+        items.computeIfAbsent(itemName, x -> new Bucket()).add(amount);
+        total.add(amount);
+    }
+
+    public Map<LocalDate, Bucket> getDaily() {
+        return daily;
+    }
+
+    public Map<String, Bucket> getWeekly() {
+        return weekly;
+    }
+
+    public Map<YearMonth, Bucket> getMonthly() {
+        return monthly;
+    }
+
+    public Bucket getTotal() {
+        return total;
+    }
+
+    /**
+     * 주문 금액 합계가 큰 순서로 n개의 상품 (합계가 같으면 상품명 순)
+     */
+    public List<Map.Entry<String, Bucket>> topItems(int n) {
+        return items.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Bucket> x) -> x.getValue().getSum()).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    // ex) 2020-W45
+    static String isoWeek(LocalDate date) {
+        return String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    public static class Bucket {
+        private long count;
+        private long sum;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+
+        void add(int amount) {
+            count++;
+            sum += amount;
+            min = Math.min(min, amount);
+            max = Math.max(max, amount);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        public BigDecimal getAvg() {
+            return count == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(sum).divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
+        }
+    }
+}
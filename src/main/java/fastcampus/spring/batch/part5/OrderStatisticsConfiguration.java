@@ -0,0 +1,301 @@
+package fastcampus.spring.batch.part5;
+
+import fastcampus.spring.batch.part3.GzipFlatFileItemWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
+
+import javax.sql.DataSource;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 유저 job에서 주문 통계 step만 따로 실행하는 job.
+ * jobParameters
+ *  - date : 통계를 만들 달 (ex. 2020-11)
+ *  - statisticsMode : 없으면 기존 JdbcPagingItemReader + group by, cursor 이면 DailyOrderStatisticsItemReader,
+ *                    typed 이면 cursor와 같이 읽고 OrderAmountStatistics(long 금액)로 reflection 없이 쓴다.
+ *                    multi 이면 한번 읽어서 일별/주별/월별/상품별/전체 통계 파일을 만든다. (MultiOrderStatisticsTasklet)
+ *                    incremental 이면 지난 실행 이후 새 주문만 order_daily_statistics에 더하고, 요약 테이블로 csv를 다시 만든다.
+ *                    partition 이면 기간을 slice 단위로 나눠 taskExecutor에서 동시에 통계를 만들고, 마지막에 하나의 파일로 합친다.
+ *  - startDate, endDate : multi, partition 에서 date 대신 사용할 기간 (ex. 2020-11-01)
+ *                         partition 이면 {startDate}_{endDate}_일별_주문_금액.csv 를 만든다.
+ *  - slice : partition 에서 나눌 단위, day 또는 week (기본 week)
+ *  - compress : gzip 이면 일별 금액 csv를 gzip으로 압축해서 쓴다. (파일 이름 뒤에 .gz, multi/partition 은 지원하지 않는다)
+ *
+ * 실행 : --job.name=orderStatisticsJob date=2020-11 statisticsMode=cursor
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Configuration
+public class OrderStatisticsConfiguration {
+
+    private final String JOB_NAME = "orderStatisticsJob";
+    private final int CHUNK_SIZE = 1_000;
+    private final int TOP_N = 10;
+    private final int SUMMARY_CHUNK_SIZE = 100_000;   // 요약 테이블에 한번에 더할 orders.id 범위
+    private final int SUMMARY_SAFETY_WINDOW = 10_000; // 늦게 commit 된 주문을 찾기 위해 watermark 아래에서 다시 읽을 id 수
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+
+    private final DataSource dataSource;
+
+    private final TaskExecutor taskExecutor;
+
+    @Bean(JOB_NAME)
+    public Job orderStatisticsJob() throws Exception {
+        return jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(orderStatisticsStep(null, null, null, null, null, null))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_orderStatisticsStep")
+    @JobScope
+    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date,
+                                    @Value("#{jobParameters[statisticsMode]}") String statisticsMode,
+                                    @Value("#{jobParameters[startDate]}") String startDate,
+                                    @Value("#{jobParameters[endDate]}") String endDate,
+                                    @Value("#{jobParameters[slice]}") String slice,
+                                    @Value("#{jobParameters[compress]}") String compress) throws Exception {
+        boolean gzip = "gzip".equals(compress);
+
+        if ("incremental".equals(statisticsMode)) {
+            return orderStatisticsIncrementalStep(date, gzip);
+        }
+
+        if ("partition".equals(statisticsMode) || "multi".equals(statisticsMode)) {
+            // startDate, endDate가 없으면 date 달의 1일 ~ 마지막일
+            LocalDate from = Objects.nonNull(startDate) ? LocalDate.parse(startDate) : YearMonth.parse(date).atDay(1);
+            LocalDate to = Objects.nonNull(endDate) ? LocalDate.parse(endDate) : YearMonth.parse(date).atEndOfMonth();
+
+            if ("partition".equals(statisticsMode)) {
+                // 기간을 지정하지 않으면 다른 모드와 같은 월 파일을 만든다.
+                boolean monthly = Objects.isNull(startDate) && Objects.isNull(endDate);
+                String period = monthly ? date : from + "_" + to;
+                String outputFile = monthly ? OrderStatisticsStepFactory.fileName(date) : String.format("%s_%s_일별_주문_금액.csv", from, to);
+
+                return orderStatisticsPartitionStep(from, to, period, outputFile, "day".equals(slice) ? 1 : 7);
+            }
+
+            return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
+                    .tasklet(new MultiOrderStatisticsTasklet(dataSource, from, to, TOP_N, "output"))
+                    .build();
+        }
+
+        if ("typed".equals(statisticsMode)) {
+            return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
+                    .<OrderAmountStatistics, OrderAmountStatistics>chunk(CHUNK_SIZE)
+                    .reader(orderAmountStatisticsItemReader(date))
+                    .writer(orderAmountStatisticsItemWriter(date, gzip))
+                    .build();
+        }
+
+        // 유저 job들과 같은 step, gzip 이면 writer만 바꾼다.
+        OrderStatisticsStepFactory orderStatisticsStepFactory = new OrderStatisticsStepFactory(stepBuilderFactory, dataSource, CHUNK_SIZE);
+        if (!gzip) {
+            return orderStatisticsStepFactory.orderStatisticsStep(JOB_NAME + "_orderStatisticsStep", JOB_NAME, date, statisticsMode);
+        }
+
+        return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
+                .<OrderStatistics, OrderStatistics>chunk(CHUNK_SIZE)
+                .reader(orderStatisticsStepFactory.orderStatisticsItemReader(JOB_NAME, date, statisticsMode))
+                .writer(orderStatisticsItemWriter(date, true))
+                .build();
+    }
+
+    /**
+     * 새 주문만 order_daily_statistics에 더하고(IncrementalOrderStatisticsTasklet), date 달의 요약 row로 csv를 만든다.
+     * csv는 orderStatisticsItemWriter와 같은 파일이다.
+     */
+    private Step orderStatisticsIncrementalStep(String date, boolean gzip) throws Exception {
+        Step summaryStep = stepBuilderFactory.get(JOB_NAME + "_orderDailyStatisticsStep")
+                .tasklet(new IncrementalOrderStatisticsTasklet(dataSource, SUMMARY_CHUNK_SIZE, SUMMARY_SAFETY_WINDOW))
+                .build();
+
+        Step fileStep = stepBuilderFactory.get(JOB_NAME + "_orderDailyStatisticsFileStep")
+                .<OrderStatistics, OrderStatistics>chunk(CHUNK_SIZE)
+                .reader(orderDailyStatisticsItemReader(date))
+                .writer(orderStatisticsItemWriter(date, gzip))
+                .build();
+
+        Flow flow = new FlowBuilder<Flow>(JOB_NAME + "_orderStatisticsIncrementalFlow")
+                .start(summaryStep)
+                .next(fileStep)
+                .build();
+
+        return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
+                .flow(flow)
+                .build();
+    }
+
+    // 요약 테이블은 하루에 한 row 이므로 orders를 group by 하지 않는다.
+    private ItemReader<? extends OrderStatistics> orderDailyStatisticsItemReader(String date) throws Exception {
+        YearMonth yearMonth = YearMonth.parse(date);
+
+        JdbcCursorItemReader<OrderStatistics> itemReader = new JdbcCursorItemReaderBuilder<OrderStatistics>()
+                .name(JOB_NAME + "_orderDailyStatisticsItemReader")
+                .dataSource(dataSource)
+                .sql("select total_amount, statistics_date from order_daily_statistics " +
+                        "where statistics_date >= ? and statistics_date <= ? order by statistics_date")
+                .queryArguments(Arrays.asList(java.sql.Date.valueOf(yearMonth.atDay(1)), java.sql.Date.valueOf(yearMonth.atEndOfMonth())))
+                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
+                        .amount(String.valueOf(rs.getLong(1)))
+                        .date(rs.getDate(2).toLocalDate())
+                        .build())
+                .build();
+
+        itemReader.afterPropertiesSet();
+
+        return itemReader;
+    }
+
+    /**
+     * [from, to] 기간을 sliceDays 일씩 나눠 partition 마다 일별 금액을 별도의 파일에 쓰고(orderStatisticsSliceStep),
+     * 모든 partition이 끝나면 시작일 순서로 이어붙여 orderStatisticsItemWriter와 같은 형식의 파일을 만든다. (OrderStatisticsMergeTasklet)
+     * job에서는 하나의 step으로 보이도록 두 step을 flow step으로 묶는다.
+     * @param period : partition 파일을 쓸 디렉토리 이름에 사용한다.
+     */
+    private Step orderStatisticsPartitionStep(LocalDate from, LocalDate to, String period, String outputFile, int sliceDays) throws Exception {
+        String sliceDirectory = "output/" + JOB_NAME + "_" + period;
+        OrderDatePartitioner partitioner = new OrderDatePartitioner(from, to, sliceDays, sliceDirectory);
+
+        Step managerStep = stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep.manager")
+                .partitioner(JOB_NAME + "_orderStatisticsSliceStep", partitioner)
+                .step(orderStatisticsSliceStep())
+                .taskExecutor(taskExecutor)
+                .build();
+
+        // partition이 받는 sliceFile만 합친다.
+        List<String> sliceFiles = partitioner.partition(0).values().stream()
+                .map(x -> x.getString("sliceFile"))
+                .collect(Collectors.toList());
+
+        Step mergeStep = stepBuilderFactory.get(JOB_NAME + "_orderStatisticsMergeStep")
+                .tasklet(new OrderStatisticsMergeTasklet(sliceDirectory, sliceFiles, "output/" + outputFile, "total_amount, date"))
+                .build();
+
+        Flow flow = new FlowBuilder<Flow>(JOB_NAME + "_orderStatisticsFlow")
+                .start(managerStep)
+                .next(mergeStep)
+                .build();
+
+        return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
+                .flow(flow)
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_orderStatisticsSliceStep")
+    public Step orderStatisticsSliceStep() throws Exception {
+        return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsSliceStep")
+                .<OrderStatistics, OrderStatistics>chunk(CHUNK_SIZE)
+                .reader(orderStatisticsSliceItemReader(null, null))
+                .writer(orderStatisticsSliceItemWriter(null))
+                .build();
+    }
+
+    // partition 기간의 일별 금액, cursor 모드와 같이 한번만 읽는다.
+    @Bean(JOB_NAME + "_orderStatisticsSliceItemReader")
+    @StepScope
+    DailyOrderStatisticsItemReader<OrderStatistics> orderStatisticsSliceItemReader(@Value("#{stepExecutionContext[startDate]}") String startDate,
+                                                                                  @Value("#{stepExecutionContext[endDate]}") String endDate) {
+        DailyOrderStatisticsItemReader<OrderStatistics> itemReader = new DailyOrderStatisticsItemReader<>(
+                dataSource, LocalDate.parse(startDate), LocalDate.parse(endDate), CHUNK_SIZE,
+                (day, amount) -> OrderStatistics.builder()
+                        .amount(String.valueOf(amount))
+                        .date(day)
+                        .build());
+        itemReader.setName(JOB_NAME + "_orderStatisticsSliceItemReader");
+
+        return itemReader;
+    }
+
+    // 헤더는 합칠때 한번만 쓴다.
+    @Bean(JOB_NAME + "_orderStatisticsSliceItemWriter")
+    @StepScope
+    FlatFileItemWriter<OrderStatistics> orderStatisticsSliceItemWriter(@Value("#{stepExecutionContext[sliceFile]}") String sliceFile) throws Exception {
+        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
+                .resource(new FileSystemResource(sliceFile))
+                .lineAggregator(OrderStatisticsStepFactory.orderStatisticsLineAggregator())
+                .name(JOB_NAME + "_orderStatisticsSliceItemWriter")
+                .encoding("UTF-8")
+                .build();
+
+        itemWriter.afterPropertiesSet();
+
+        return itemWriter;
+    }
+
+    // 금액은 long, 날짜는 epoch day로 읽는다.
+    private ItemReader<? extends OrderAmountStatistics> orderAmountStatisticsItemReader(String date) throws Exception {
+        YearMonth yearMonth = YearMonth.parse(date);
+
+        DailyOrderStatisticsItemReader<OrderAmountStatistics> itemReader = new DailyOrderStatisticsItemReader<>(
+                dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth(), CHUNK_SIZE,
+                (day, amount) -> new OrderAmountStatistics(amount, day));
+        itemReader.setName(JOB_NAME + "_orderAmountStatisticsItemReader");
+
+        return itemReader;
+    }
+
+    // orderStatisticsItemWriter와 같은 파일을 reflection 없이 만든다.
+    private ItemWriter<? super OrderAmountStatistics> orderAmountStatisticsItemWriter(String date, boolean gzip) throws Exception {
+        return csvItemWriter(date, new OrderAmountStatisticsLineAggregator(), JOB_NAME + "_orderAmountStatisticsItemWriter", gzip);
+    }
+
+    /**
+     * 읽은 데이터를 기준으로 csv 파일을 생성한다.
+     */
+    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date, boolean gzip) throws Exception {
+        return csvItemWriter(date, OrderStatisticsStepFactory.orderStatisticsLineAggregator(), JOB_NAME + "_orderStatisticsItemWriter", gzip);
+    }
+
+    // gzip 이면 같은 내용을 chunk마다 gzip 블록으로 압축해서 {파일 이름}.gz 에 쓴다.
+    private <T> ItemWriter<T> csvItemWriter(String date, LineAggregator<T> lineAggregator, String name, boolean gzip) throws Exception {
+        if (gzip) {
+            GzipFlatFileItemWriter<T> itemWriter = new GzipFlatFileItemWriter<>(Paths.get("output/" + OrderStatisticsStepFactory.fileName(date) + ".gz"), lineAggregator);
+            itemWriter.setName(name);
+            itemWriter.setHeaderCallback(writer -> writer.write("total_amount, date"));
+
+            return itemWriter;
+        }
+
+        FlatFileItemWriter<T> itemWriter = new FlatFileItemWriterBuilder<T>()
+                .resource(new FileSystemResource("output/" + OrderStatisticsStepFactory.fileName(date)))
+                .lineAggregator(lineAggregator)
+                .name(name)
+                .encoding("UTF-8")
+                .headerCallback(writer -> writer.write("total_amount, date"))
+                .build();
+
+        itemWriter.afterPropertiesSet();
+
+        return itemWriter;
+    }
+
+}
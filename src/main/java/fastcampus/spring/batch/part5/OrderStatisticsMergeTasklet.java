@@ -0,0 +1,75 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * partition 마다 쓴 통계 파일(sliceFiles)을 파일 이름(=시작일) 순서로 이어붙여 하나의 csv로 만든다.
+ * 헤더와 줄바꿈을 FlatFileItemWriter와 같게 써서, partition 없이 한번에 만든 파일과 같은 내용이 된다.
+ *
+ * sliceFiles는 partition의 ExecutionContext에 넣은 sliceFile 이다. (OrderDatePartitioner)
+ * 디렉토리의 파일을 모두 합치지 않으므로, 다른 slice로 실패한 실행이 남긴 파일이 섞이지 않는다.
+ * 합친 후에는 partition 파일을 지운다. 디렉토리는 비어있을때만 지운다.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class OrderStatisticsMergeTasklet implements Tasklet {
+
+    private final String sliceDirectory;
+    private final List<String> sliceFiles;
+    private final String outputFile;
+    private final String header;
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        List<Path> slices = sliceFiles.stream()
+                .map(Paths::get)
+                .sorted()
+                .collect(Collectors.toList());
+        for (Path slice : slices) {
+            if (!Files.exists(slice)) {
+                throw new IllegalStateException("partition 결과 파일이 없습니다 : " + slice);
+            }
+        }
+
+        Path output = Paths.get(outputFile);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+
+        try (OutputStream out = Files.newOutputStream(output)) {
+            // FlatFileItemWriter의 기본 줄바꿈은 line.separator
+            out.write((header + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            for (Path slice : slices) {
+                Files.copy(slice, out);
+            }
+        }
+
+        for (Path slice : slices) {
+            Files.delete(slice);
+        }
+        try {
+            Files.deleteIfExists(Paths.get(sliceDirectory));
+        } catch (DirectoryNotEmptyException e) {
+            log.warn("{}에 이번 실행이 만들지 않은 파일이 남아있습니다.", sliceDirectory);
+        }
+
+        contribution.incrementWriteCount(slices.size());
+        log.info("{}개 partition 결과를 {}로 합쳤습니다.", slices.size(), outputFile);
+
+        return RepeatStatus.FINISHED;
+    }
+}
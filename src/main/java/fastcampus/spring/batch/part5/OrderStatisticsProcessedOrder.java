@@ -0,0 +1,26 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * IncrementalOrderStatisticsTasklet이 order_daily_statistics에 이미 더한 orders.id
+ * watermark 아래 safety window를 다시 읽을때 이미 더한 주문을 건너뛰기 위해 사용한다. window 아래의 id는 지운다.
+ * stepExecutionId : 이 주문을 더한 step, 같은 트랜잭션에서 방금 추가한 주문만 골라 합계를 구한다.
+ * (테이블은 jpa ddl-auto로 만든다)
+ */
+@Entity
+@Getter
+@NoArgsConstructor
+@Table(name = "order_statistics_processed_order")
+public class OrderStatisticsProcessedOrder {
+
+    @Id
+    private long orderId;
+
+    private long stepExecutionId;
+}
@@ -0,0 +1,139 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcPagingItemReader;
+import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.core.io.FileSystemResource;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 유저 job들(userJob, multiThreadUserJob, asyncUserJob ...)과 orderStatisticsJob이 같이 사용하는 주문 통계 step.
+ * date 달의 일별 주문 금액 합계를 output/{yyyy}년_{M}월_일별_주문_금액.csv 로 쓴다.
+ * statisticsMode가 cursor 이면 JdbcPagingItemReader + group by 대신 DailyOrderStatisticsItemReader로 orders를 한번만 읽는다.
+ *
+ * reader, writer의 이름(ExecutionContext 키)은 namePrefix(job 이름)로 구분한다.
+ */
+@RequiredArgsConstructor
+public class OrderStatisticsStepFactory {
+
+    private final StepBuilderFactory stepBuilderFactory;
+    private final DataSource dataSource;
+    private final int chunkSize;
+
+    public Step orderStatisticsStep(String stepName, String namePrefix, String date, String statisticsMode) throws Exception {
+        return stepBuilderFactory.get(stepName)
+                .<OrderStatistics, OrderStatistics>chunk(chunkSize)
+                .reader(orderStatisticsItemReader(namePrefix, date, statisticsMode))
+                .writer(orderStatisticsItemWriter(namePrefix, date))
+                .build();
+    }
+
+    public ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String namePrefix, String date, String statisticsMode) throws Exception {
+        if ("cursor".equals(statisticsMode)) {
+            return orderStatisticsCursorItemReader(namePrefix, date);
+        }
+        return orderStatisticsPagingItemReader(namePrefix, date);
+    }
+
+    /**
+     * 한달간의 Orders 데이터를 읽어 일별 금액(amount)의 총합을 읽어들인다
+     */
+    private ItemReader<? extends OrderStatistics> orderStatisticsPagingItemReader(String namePrefix, String date) throws Exception {
+        YearMonth yearMonth = YearMonth.parse(date);
+
+        Map<String, Object> parameters = new HashMap<>();
+
+        parameters.put("startDate", yearMonth.atDay(1) );   // date 달의 1일
+        parameters.put("endDate", yearMonth.atEndOfMonth());           // date 달의 마지막일
+
+        // 정렬 -> created_date 기준 오름차순정렬
+        Map<String, Order> sortKey = Collections.singletonMap("created_date", Order.ASCENDING);
+
+        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
+                .dataSource(this.dataSource)
+                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
+                        .amount(rs.getString(1))
+                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
+                        .build())
+                .pageSize(chunkSize)
+                .name(namePrefix + "_orderStatisticsItemReader")
+                .selectClause("sum(amount), created_date")
+                .fromClause("orders")
+                .whereClause("created_date >= :startDate and created_date <= :endDate")
+                .groupClause("created_date ")
+                .parameterValues(parameters)
+                .sortKeys(sortKey)
+                .build();
+
+        itemReader.afterPropertiesSet();
+
+        return itemReader;
+    }
+
+    /**
+     * 한달간의 Orders 데이터를 한번만 읽으면서 일별 금액의 총합을 계산한다.
+     */
+    private ItemReader<? extends OrderStatistics> orderStatisticsCursorItemReader(String namePrefix, String date) throws Exception {
+        YearMonth yearMonth = YearMonth.parse(date);
+
+        DailyOrderStatisticsItemReader<OrderStatistics> itemReader = new DailyOrderStatisticsItemReader<>(
+                dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth(), chunkSize,
+                (day, amount) -> OrderStatistics.builder()
+                        .amount(String.valueOf(amount))
+                        .date(day)
+                        .build());
+        itemReader.setName(namePrefix + "_orderStatisticsCursorItemReader");
+
+        return itemReader;
+    }
+
+    /**
+     * 읽은 데이터를 기준으로 csv 파일을 생성한다.
+     */
+    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String namePrefix, String date) throws Exception {
+        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
+                .resource(new FileSystemResource("output/" + fileName(date)))
+                .lineAggregator(orderStatisticsLineAggregator())
+                .name(namePrefix + "_orderStatisticsItemWriter")
+                .encoding("UTF-8")
+                .headerCallback(writer -> writer.write("total_amount, date"))
+                .build();
+
+        itemWriter.afterPropertiesSet();
+
+        return itemWriter;
+    }
+
+    public static DelimitedLineAggregator<OrderStatistics> orderStatisticsLineAggregator() {
+        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(new String[]{"amount", "date"});
+
+        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
+        lineAggregator.setDelimiter(",");
+        lineAggregator.setFieldExtractor(fieldExtractor);
+
+        return lineAggregator;
+    }
+
+    public static String fileName(String date) {
+        YearMonth yearMonth = YearMonth.parse(date);
+
+        return String.format("%s년_%d월_일별_주문_금액.csv", yearMonth.getYear(), yearMonth.getMonthValue());
+    }
+}
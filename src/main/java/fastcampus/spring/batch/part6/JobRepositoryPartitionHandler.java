@@ -0,0 +1,70 @@
+package fastcampus.spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.partition.support.AbstractPartitionHandler;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * remote partitioning의 manager 쪽 PartitionHandler.
+ * partition을 메시지로 보내지 않는다. StepExecutionSplitter가 JobRepository에 저장한 partition(STARTING)을
+ * 다른 JVM의 JobRepositoryPartitionWorker가 같은 db를 polling 해서 가져가 실행한다.
+ * manager는 JobRepository를 polling 해서 partition이 모두 끝났는지 확인한다. -> db 외에 broker가 필요 없다.
+ *
+ * worker가 partition을 실행하다 죽으면 그 partition은 STARTED로 남는다. timeout을 지정하면 그 시간이 지나서 실패하고,
+ * 해당 step execution을 FAILED로 고친 뒤 job을 재시작하면 끝나지 않은 partition만 다시 만들어진다.
+ */
+@Slf4j
+public class JobRepositoryPartitionHandler extends AbstractPartitionHandler {
+
+    private final JobExplorer jobExplorer;
+
+    private long pollInterval = 1_000;
+    private long timeout = -1;
+
+    public JobRepositoryPartitionHandler(JobExplorer jobExplorer) {
+        this.jobExplorer = jobExplorer;
+    }
+
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * @param timeout : millis, 0 이하이면 끝날때까지 기다린다.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    protected Set<StepExecution> doHandle(StepExecution managerStepExecution,
+                                          Set<StepExecution> partitionStepExecutions) throws Exception {
+        log.info("{}개 partition을 worker에게 맡긴다.", partitionStepExecutions.size());
+
+        long started = System.currentTimeMillis();
+        Set<StepExecution> finished = new HashSet<>();
+        while (true) {
+            for (StepExecution partition : partitionStepExecutions) {
+                StepExecution current = jobExplorer.getStepExecution(partition.getJobExecutionId(), partition.getId());
+                if (!current.getStatus().isRunning()) {
+                    finished.add(current);
+                }
+            }
+            if (finished.size() == partitionStepExecutions.size()) {
+                return finished;
+            }
+            finished.clear();
+
+            if (timeout > 0 && System.currentTimeMillis() - started > timeout) {
+                throw new TimeoutException("partition이 " + timeout + "ms 안에 끝나지 않았습니다.");
+            }
+            TimeUnit.MILLISECONDS.sleep(pollInterval);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package fastcampus.spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * remote partitioning의 worker 쪽, JobRepositoryPartitionHandler(manager)와 같은 db만 공유하면 된다.
+ * JobRepository를 polling 해서 실행 중인 job의 아직 시작하지 않은(STARTING) partition을 찾고, 하나씩 가져가(claim) 실행한다.
+ *
+ * 가져가기는 step execution의 version을 올리는 update로 한다. 여러 worker(JVM)가 같은 partition을 동시에 찾아도
+ * update가 성공한 한 곳만 실행한다. step.execute()는 올라간 version으로 다시 조회한 StepExecution으로 실행하므로,
+ * 이후 JobRepository 저장(낙관적 lock)도 그대로 동작한다.
+ *
+ * concurrency 개의 쓰레드가 각각 polling 하며, context가 시작/종료될때 같이 시작/종료된다.
+ */
+@Slf4j
+public class JobRepositoryPartitionWorker implements SmartLifecycle {
+
+    private static final String FIND_SQL =
+            "select se.JOB_EXECUTION_ID, se.STEP_EXECUTION_ID, se.VERSION from %sSTEP_EXECUTION se " +
+            "join %sJOB_EXECUTION je on je.JOB_EXECUTION_ID = se.JOB_EXECUTION_ID " +
+            "where se.STEP_NAME like ? and se.STATUS = 'STARTING' and je.STATUS = 'STARTED' " +
+            "order by se.STEP_EXECUTION_ID";
+    private static final String CLAIM_SQL =
+            "update %sSTEP_EXECUTION set STATUS = 'STARTED', VERSION = VERSION + 1 " +
+            "where STEP_EXECUTION_ID = ? and VERSION = ? and STATUS = 'STARTING'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobExplorer jobExplorer;
+    private final Step step;
+    private final String findSql;
+    private final String claimSql;
+
+    private int concurrency = 1;
+    private long pollInterval = 1_000;
+
+    private final List<Thread> pollers = new ArrayList<>();
+    private volatile boolean running;
+
+    /**
+     * @param step : 실행할 step, manager의 partition step 이름은 {step 이름}:{partition 이름} 이다.
+     * @param tablePrefix : JobRepository 테이블 prefix (기본 BATCH_)
+     */
+    public JobRepositoryPartitionWorker(DataSource dataSource, JobExplorer jobExplorer, Step step, String tablePrefix) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jobExplorer = jobExplorer;
+        this.step = step;
+        this.findSql = String.format(FIND_SQL, tablePrefix, tablePrefix);
+        this.claimSql = String.format(CLAIM_SQL, tablePrefix);
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (int i = 0; i < concurrency; i++) {
+            Thread poller = new Thread(this::poll, step.getName() + "-worker-" + i);
+            poller.setDaemon(true);
+            poller.start();
+            pollers.add(poller);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread poller : pollers) {
+            try {
+                // 실행 중인 partition은 interrupt 하지 않고 끝날때까지 기다린다.
+                poller.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pollers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void poll() {
+        while (running) {
+            try {
+                if (!executeNext()) {
+                    TimeUnit.MILLISECONDS.sleep(pollInterval);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("{} partition polling 중 오류가 발생했습니다.", step.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * @return partition을 하나 실행했으면 true
+     */
+    private boolean executeNext() throws Exception {
+        List<Map<String, Object>> candidates = jdbcTemplate.queryForList(findSql, step.getName() + ":%");
+        for (Map<String, Object> candidate : candidates) {
+            long jobExecutionId = ((Number) candidate.get("JOB_EXECUTION_ID")).longValue();
+            long stepExecutionId = ((Number) candidate.get("STEP_EXECUTION_ID")).longValue();
+            long version = ((Number) candidate.get("VERSION")).longValue();
+
+            // 다른 worker가 먼저 가져갔으면 다음 partition을 본다.
+            if (jdbcTemplate.update(claimSql, stepExecutionId, version) == 0) {
+                continue;
+            }
+
+            StepExecution stepExecution = jobExplorer.getStepExecution(jobExecutionId, stepExecutionId);
+            log.info("{} 실행", stepExecution.getStepName());
+            step.execute(stepExecution);
+            return true;
+        }
+        return false;
+    }
+}
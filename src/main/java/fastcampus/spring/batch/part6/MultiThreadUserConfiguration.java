@@ -2,7 +2,7 @@ package fastcampus.spring.batch.part6;
 
 import fastcampus.spring.batch.part4.*;
 import fastcampus.spring.batch.part5.JobParametersDecide;
-import fastcampus.spring.batch.part5.OrderStatistics;
+import fastcampus.spring.batch.part5.OrderStatisticsStepFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -14,29 +14,13 @@ import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.task.TaskExecutor;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
-import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -52,6 +36,9 @@ public class MultiThreadUserConfiguration {
 
     private final DataSource dataSource;
 
+    // writer가 세고 listener가 출력하는 등급 상향 전 -> 후 건수
+    private final LevelUpTransitionCounter transitionCounter = new LevelUpTransitionCounter();
+
     private final TaskExecutor taskExecutor;
 
     // 실무에선 이렇게 하나의 job에 성격이 다른 여러 step을 연결하지 않는다
@@ -62,91 +49,23 @@ public class MultiThreadUserConfiguration {
                 .start(clearUserStep())
                 .next(saveUserStep())
                 .next(userLevelUpStep())
-                .listener(new LevelUpJobExecutionListener(userRepository))
+                .listener(new LevelUpJobExecutionListener(userRepository, transitionCounter))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())  // 결과가 JobParametersDecide.CONTINUE.getName() 와 같으면 이하 to() 내의 step을 실행한다.
-                .to(orderStatisticsStep(null))
+                .to(orderStatisticsStep(null, null))
                 .build()
                 .build();
     }
 
-    @Bean(JOB_NAME + "orderStatisticsStep")
-    @JobScope
-    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date) throws Exception {
-        return stepBuilderFactory.get(JOB_NAME + "orderStatisticsStep")
-                .<OrderStatistics, OrderStatistics>chunk(CHUNK_SIZE)
-                .reader(orderStatisticsItemReader(date))
-                .writer(orderStatisticsItemWriter(date))
-                .build();
-    }
-
-    /**
-     * 한달간의 Orders 데이터를 읽어 일별 금액(amount)의 총합을 읽어들인다
-     * @param date
-     * @return
-     * @throws Exception
-     */
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        Map<String, Object> parameters = new HashMap<>();
-
-        parameters.put("startDate", yearMonth.atDay(1) );   // date 달의 1일
-        parameters.put("endDate", yearMonth.atEndOfMonth());           // date 달의 마지막일
-
-        // 정렬 -> created_date 기준 오름차순정렬
-        Map<String, Order> sortKey = Collections.singletonMap("created_date", Order.ASCENDING);
-
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(CHUNK_SIZE)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date ")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-
-        itemReader.afterPropertiesSet();
-
-        return itemReader;
-    }
-
     /**
-     * orderStatisticsItemReader에서 읽은 데이터를 기준으로 csv 파일을 생성한다.
-     * @param date
-     * @return
+     * date 달의 일별 주문 금액 csv를 만든다. statisticsMode가 cursor 이면 orders를 한번만 읽는다. (OrderStatisticsStepFactory)
      */
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date) throws Exception {
-
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        String fileName = String.format("%s년_%d월_일별_주문_금액.csv", yearMonth.getYear(), yearMonth.getMonthValue());
-
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-                .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
-                .name(JOB_NAME + "_orderStatisticsItemWriter")
-                .encoding("UTF-8")
-                .headerCallback(writer -> writer.write("total_amount, date"))
-                .build();
-
-        itemWriter.afterPropertiesSet();
-
-        return itemWriter;
+    @Bean(JOB_NAME + "orderStatisticsStep")
+    @JobScope
+    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date,
+                                    @Value("#{jobParameters[statisticsMode]}") String statisticsMode) throws Exception {
+        return new OrderStatisticsStepFactory(stepBuilderFactory, dataSource, CHUNK_SIZE)
+                .orderStatisticsStep(JOB_NAME + "orderStatisticsStep", JOB_NAME, date, statisticsMode);
     }
 
     @Bean(JOB_NAME + "_clearUserStep")
@@ -176,14 +95,13 @@ public class MultiThreadUserConfiguration {
                 .build();
     }
 
+    /**
+     * JpaPagingItemReader는 여러 쓰레드가 동시에 read() 하는 상황을 고려하지 않았고, page 조회 시 모든 쓰레드가 기다린다.
+     * 별도 쓰레드에서 page를 미리 읽어두고, 8개의 쓰레드는 꺼내가기만 한다.
+     */
     private ItemReader<? extends User> itemReader() throws Exception {
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u")
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(CHUNK_SIZE)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-        itemReader.afterPropertiesSet();
+        UserPrefetchItemReader itemReader = new UserPrefetchItemReader(entityManagerFactory, CHUNK_SIZE, 4);
+        itemReader.setName(JOB_NAME + "_userItemReader");
 
         return itemReader;
     }
@@ -199,12 +117,9 @@ public class MultiThreadUserConfiguration {
         };
     }
 
-    // Consumer<User>
+    // Consumer<User>, 등급 상향 후 chunk 단위 jdbc batch update
     private ItemWriter<? super User> itemWriter() {
-        return users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
+        return new UserLevelUpItemWriter(dataSource, transitionCounter);
     }
 
 }
@@ -2,7 +2,7 @@ package fastcampus.spring.batch.part6;
 
 import fastcampus.spring.batch.part4.*;
 import fastcampus.spring.batch.part5.JobParametersDecide;
-import fastcampus.spring.batch.part5.OrderStatistics;
+import fastcampus.spring.batch.part5.OrderStatisticsStepFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -13,35 +13,20 @@ import org.springframework.batch.core.configuration.annotation.StepBuilderFactor
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.integration.async.AsyncItemProcessor;
 import org.springframework.batch.integration.async.AsyncItemWriter;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
-import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Future;
 
 @Slf4j
@@ -51,6 +36,8 @@ public class PartitionAsyncUserConfiguration {
 
     private final String JOB_NAME = "partitionAsyncUserJob";
     private final int CHUNK_SIZE = 1_000;
+    private final int RANGES_PER_WORKER = 16;           // work stealing 시 쓰레드 하나당 나눌 id 범위 수
+    private final int ASYNC_PROCESSOR_THREADS = 2;      // partition에 할당하지 않고 AsyncItemProcessor를 위해 남겨둘 쓰레드 수
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
@@ -58,6 +45,9 @@ public class PartitionAsyncUserConfiguration {
 
     private final DataSource dataSource;
 
+    // writer가 세고 listener가 출력하는 등급 상향 전 -> 후 건수
+    private final LevelUpTransitionCounter transitionCounter = new LevelUpTransitionCounter();
+
     private final TaskExecutor taskExecutor;
 
     // 실무에선 이렇게 하나의 job에 성격이 다른 여러 step을 연결하지 않는다
@@ -68,91 +58,23 @@ public class PartitionAsyncUserConfiguration {
                 .start(clearUserStep())
                 .next(saveUserStep())
                 .next(this.userLevelUpManagerStep())
-                .listener(new LevelUpJobExecutionListener(userRepository))
+                .listener(new LevelUpJobExecutionListener(userRepository, transitionCounter))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())  // 결과가 JobParametersDecide.CONTINUE.getName() 와 같으면 이하 to() 내의 step을 실행한다.
-                .to(orderStatisticsStep(null))
+                .to(orderStatisticsStep(null, null))
                 .build()
                 .build();
     }
 
-    @Bean(JOB_NAME + "orderStatisticsStep")
-    @JobScope
-    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date) throws Exception {
-        return stepBuilderFactory.get(JOB_NAME + "orderStatisticsStep")
-                .<OrderStatistics, OrderStatistics>chunk(CHUNK_SIZE)
-                .reader(orderStatisticsItemReader(date))
-                .writer(orderStatisticsItemWriter(date))
-                .build();
-    }
-
-    /**
-     * 한달간의 Orders 데이터를 읽어 일별 금액(amount)의 총합을 읽어들인다
-     * @param date
-     * @return
-     * @throws Exception
-     */
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        Map<String, Object> parameters = new HashMap<>();
-
-        parameters.put("startDate", yearMonth.atDay(1) );   // date 달의 1일
-        parameters.put("endDate", yearMonth.atEndOfMonth());           // date 달의 마지막일
-
-        // 정렬 -> created_date 기준 오름차순정렬
-        Map<String, Order> sortKey = Collections.singletonMap("created_date", Order.ASCENDING);
-
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(CHUNK_SIZE)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date ")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-
-        itemReader.afterPropertiesSet();
-
-        return itemReader;
-    }
-
     /**
-     * orderStatisticsItemReader에서 읽은 데이터를 기준으로 csv 파일을 생성한다.
-     * @param date
-     * @return
+     * date 달의 일별 주문 금액 csv를 만든다. statisticsMode가 cursor 이면 orders를 한번만 읽는다. (OrderStatisticsStepFactory)
      */
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date) throws Exception {
-
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        String fileName = String.format("%s년_%d월_일별_주문_금액.csv", yearMonth.getYear(), yearMonth.getMonthValue());
-
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-                .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
-                .name(JOB_NAME + "_orderStatisticsItemWriter")
-                .encoding("UTF-8")
-                .headerCallback(writer -> writer.write("total_amount, date"))
-                .build();
-
-        itemWriter.afterPropertiesSet();
-
-        return itemWriter;
+    @Bean(JOB_NAME + "orderStatisticsStep")
+    @JobScope
+    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date,
+                                    @Value("#{jobParameters[statisticsMode]}") String statisticsMode) throws Exception {
+        return new OrderStatisticsStepFactory(stepBuilderFactory, dataSource, CHUNK_SIZE)
+                .orderStatisticsStep(JOB_NAME + "orderStatisticsStep", JOB_NAME, date, statisticsMode);
     }
 
     @Bean(JOB_NAME + "_clearUserStep")
@@ -184,27 +106,71 @@ public class PartitionAsyncUserConfiguration {
     @Bean(JOB_NAME + "_userLevelUpStep.manager")
     public Step userLevelUpManagerStep() throws Exception {
         return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep.manager")
-                .partitioner(JOB_NAME + "_userLevelUpStep", new UserLevelUpPartitioner(userRepository))
+                .partitioner(JOB_NAME + "_userLevelUpStep", userLevelUpPartitioner(null))
                 .step(userLevelUpStep())
-                .partitionHandler(taskExecutorPartitionHandler())
+                .partitionHandler(partitionHandler(null))
                 .build();
     }
 
     /**
      * 파티션을 핸들링 할 수 있는 객체,
+     * jobParameters의 workStealing이 true 이면 id 범위를 잘게 나누고, 쓰레드들이 끝나는대로 다음 범위를 가져가게 한다.
      * @return
      * @throws Exception
      */
-    @Bean(JOB_NAME + "_taskExecutorPartitionHandler")
-    PartitionHandler taskExecutorPartitionHandler() throws Exception {
+    @Bean(JOB_NAME + "_partitionHandler")
+    @JobScope
+    PartitionHandler partitionHandler(@Value("#{jobParameters[workStealing]}") String workStealing) throws Exception {
+        if ("true".equals(workStealing)) {
+            WorkStealingPartitionHandler handler = new WorkStealingPartitionHandler();
+            handler.setStep(userLevelUpStep());
+            handler.setTaskExecutor(this.taskExecutor);
+            handler.setWorkerCount(gridSize());
+            handler.setGridSize(gridSize() * RANGES_PER_WORKER);
+
+            return handler;
+        }
+
         TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
         handler.setStep(userLevelUpStep());
         handler.setTaskExecutor(this.taskExecutor);
-        handler.setGridSize(8);
+        handler.setGridSize(gridSize());
 
         return handler;
     }
 
+    /**
+     * partition 수는 cpu core 수를 기본으로 하되, 같은 pool을 사용하는 AsyncItemProcessor를 위해 쓰레드를 남겨둔다.
+     * partition이 pool의 쓰레드를 모두 차지하면 AsyncItemProcessor의 작업이 queue에서 기다리고,
+     * AsyncItemWriter는 그 결과(Future)를 기다리므로 끝나지 않는다. (queue가 무제한이면 pool도 늘어나지 않는다)
+     */
+    private int gridSize() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (taskExecutor instanceof ThreadPoolTaskExecutor) {
+            int poolSize = ((ThreadPoolTaskExecutor) taskExecutor).getCorePoolSize();
+            return Math.max(1, Math.min(cores, poolSize - ASYNC_PROCESSOR_THREADS));
+        }
+        return cores;
+    }
+
+    /**
+     * jobParameters의 partitionMode 에 따라 partition 을 나누는 방식을 정한다.
+     * - quantile : partition 마다 user 수가 같도록 나눈다.
+     * - order_weighted : partition 마다 (user 수 + 주문 수)가 같도록 나눈다.
+     * - 그 외 : min ~ max id를 같은 간격으로 나눈다.
+     */
+    @Bean(JOB_NAME + "_userLevelUpPartitioner")
+    @JobScope
+    Partitioner userLevelUpPartitioner(@Value("#{jobParameters[partitionMode]}") String partitionMode) {
+        if ("quantile".equals(partitionMode)) {
+            return new UserLevelUpQuantilePartitioner(dataSource, false);
+        }
+        if ("order_weighted".equals(partitionMode)) {
+            return new UserLevelUpQuantilePartitioner(dataSource, true);
+        }
+        return new UserLevelUpPartitioner(userRepository);
+    }
+
     /**
      * itemReader에서 ExecutionContext를 사용하기 위해서는 @StepScope가 필요하고, @StepScope를 사용하려면 @Bean이 필요하다.
      * @StepScope를 쓰면 return Type을 interface가 아니라 구현체로 정확히 명시해줘야한다.
@@ -212,19 +178,11 @@ public class PartitionAsyncUserConfiguration {
      */
     @Bean(JOB_NAME + "_itemReader")
     @StepScope
-    JpaPagingItemReader<User> itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
+    UserKeysetPagingItemReader itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
                                           @Value("#{stepExecutionContext[maxId]}") Long maxId) throws Exception {
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("minId", minId);
-        parameters.put("maxId", maxId);
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u where u.id between :minId and :maxId")
-                .parameterValues(parameters)
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(CHUNK_SIZE)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-        itemReader.afterPropertiesSet();
+        // partition 범위 안에서 offset 대신 마지막으로 읽은 id 이후부터 읽는다(keyset paging)
+        UserKeysetPagingItemReader itemReader = new UserKeysetPagingItemReader(entityManagerFactory, CHUNK_SIZE, minId, maxId);
+        itemReader.setName(JOB_NAME + "_userItemReader");
 
         return itemReader;
     }
@@ -249,10 +207,8 @@ public class PartitionAsyncUserConfiguration {
 
     // Consumer<User>
     private AsyncItemWriter<User> itemWriter() {
-        ItemWriter<User> itemWriter = users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
+        // 등급 상향 후 chunk 단위 jdbc batch update
+        ItemWriter<User> itemWriter = new UserLevelUpItemWriter(dataSource, transitionCounter);
 
         AsyncItemWriter<User> asyncItemWriter = new AsyncItemWriter<>();
         asyncItemWriter.setDelegate(itemWriter);
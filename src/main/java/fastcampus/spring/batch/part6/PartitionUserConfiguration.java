@@ -2,7 +2,7 @@ package fastcampus.spring.batch.part6;
 
 import fastcampus.spring.batch.part4.*;
 import fastcampus.spring.batch.part5.JobParametersDecide;
-import fastcampus.spring.batch.part5.OrderStatistics;
+import fastcampus.spring.batch.part5.OrderStatisticsStepFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -15,29 +15,18 @@ import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.partition.PartitionHandler;
 import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
+import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
+import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
 import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.task.TaskExecutor;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
-import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -48,6 +37,7 @@ public class PartitionUserConfiguration {
 
     private final String JOB_NAME = "partitionUserJob";
     private final int CHUNK_SIZE = 1_000;
+    private final long DEFAULT_SEED_SIZE = 40_000;
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
@@ -55,6 +45,9 @@ public class PartitionUserConfiguration {
 
     private final DataSource dataSource;
 
+    // writer가 세고 listener가 출력하는 등급 상향 전 -> 후 건수
+    private final LevelUpTransitionCounter transitionCounter = new LevelUpTransitionCounter();
+
     private final TaskExecutor taskExecutor;
 
     // 실무에선 이렇게 하나의 job에 성격이 다른 여러 step을 연결하지 않는다
@@ -63,109 +56,81 @@ public class PartitionUserConfiguration {
         return this.jobBuilderFactory.get(JOB_NAME)
                 .incrementer(new RunIdIncrementer())
                 .start(clearUserStep())
-                .next(saveUserStep())
+                .next(saveUserManagerStep(null))
                 .next(this.userLevelUpManagerStep())
-                .listener(new LevelUpJobExecutionListener(userRepository))
+                .listener(new LevelUpJobExecutionListener(userRepository, transitionCounter))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())  // 결과가 JobParametersDecide.CONTINUE.getName() 와 같으면 이하 to() 내의 step을 실행한다.
-                .to(orderStatisticsStep(null))
+                .to(orderStatisticsStep(null, null))
                 .build()
                 .build();
     }
 
+    /**
+     * date 달의 일별 주문 금액 csv를 만든다. statisticsMode가 cursor 이면 orders를 한번만 읽는다. (OrderStatisticsStepFactory)
+     */
     @Bean(JOB_NAME + "orderStatisticsStep")
     @JobScope
-    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date) throws Exception {
-        return stepBuilderFactory.get(JOB_NAME + "orderStatisticsStep")
-                .<OrderStatistics, OrderStatistics>chunk(CHUNK_SIZE)
-                .reader(orderStatisticsItemReader(date))
-                .writer(orderStatisticsItemWriter(date))
+    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date,
+                                    @Value("#{jobParameters[statisticsMode]}") String statisticsMode) throws Exception {
+        return new OrderStatisticsStepFactory(stepBuilderFactory, dataSource, CHUNK_SIZE)
+                .orderStatisticsStep(JOB_NAME + "orderStatisticsStep", JOB_NAME, date, statisticsMode);
+    }
+
+    @Bean(JOB_NAME + "_clearUserStep")
+    public Step clearUserStep() {
+        return stepBuilderFactory.get(JOB_NAME + "_clearUserStep")
+                .tasklet(new ClearUserStep(userRepository))
                 .build();
     }
 
     /**
-     * 한달간의 Orders 데이터를 읽어 일별 금액(amount)의 총합을 읽어들인다
-     * @param date
-     * @return
-     * @throws Exception
+     * SaveUserTasklet 대신 테스트 데이터를 partition으로 나눠 여러 쓰레드에서 chunk 단위로 만든다.
+     * jobParameters의 seedSize(유저 수, 기본 40,000), seedDistribution(금액 분포), seed(난수 seed)로 데이터를 정한다.
      */
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        Map<String, Object> parameters = new HashMap<>();
-
-        parameters.put("startDate", yearMonth.atDay(1) );   // date 달의 1일
-        parameters.put("endDate", yearMonth.atEndOfMonth());           // date 달의 마지막일
-
-        // 정렬 -> created_date 기준 오름차순정렬
-        Map<String, Order> sortKey = Collections.singletonMap("created_date", Order.ASCENDING);
+    @Bean(JOB_NAME + "_saveUserStep.manager")
+    @JobScope
+    public Step saveUserManagerStep(@Value("#{jobParameters[seedSize]}") Long seedSize) throws Exception {
+        return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep.manager")
+                .partitioner(JOB_NAME + "_saveUserStep", new UserSeedPartitioner(seedSize == null ? DEFAULT_SEED_SIZE : seedSize))
+                .step(saveUserStep())
+                .taskExecutor(this.taskExecutor)
+                .gridSize(8)
+                .build();
+    }
 
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(CHUNK_SIZE)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date ")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
+    @Bean(JOB_NAME + "_saveUserStep")
+    public Step saveUserStep() throws Exception {
+        return stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
+                .<User, User>chunk(CHUNK_SIZE)
+                .reader(userSeedItemReader(null, null, null, null))
+                .writer(userSeedItemWriter())       // chunk 마다 커밋되고 영속성 컨텍스트도 비워진다
                 .build();
+    }
 
-        itemReader.afterPropertiesSet();
+    @Bean(JOB_NAME + "_userSeedItemReader")
+    @StepScope
+    UserSeedItemReader userSeedItemReader(@Value("#{stepExecutionContext[startIndex]}") Long startIndex,
+                                          @Value("#{stepExecutionContext[endIndex]}") Long endIndex,
+                                          @Value("#{jobParameters[seedDistribution]}") String seedDistribution,
+                                          @Value("#{jobParameters[seed]}") Long seed) {
+        UserSeedItemReader itemReader = new UserSeedItemReader(
+                UserSeedDistribution.parse(seedDistribution, seed), startIndex, endIndex);
+        itemReader.setName(JOB_NAME + "_userSeedItemReader");
 
         return itemReader;
     }
 
-    /**
-     * orderStatisticsItemReader에서 읽은 데이터를 기준으로 csv 파일을 생성한다.
-     * @param date
-     * @return
-     */
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date) throws Exception {
-
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        String fileName = String.format("%s년_%d월_일별_주문_금액.csv", yearMonth.getYear(), yearMonth.getMonthValue());
-
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-                .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
-                .name(JOB_NAME + "_orderStatisticsItemWriter")
-                .encoding("UTF-8")
-                .headerCallback(writer -> writer.write("total_amount, date"))
+    private ItemWriter<User> userSeedItemWriter() throws Exception {
+        JpaItemWriter<User> itemWriter = new JpaItemWriterBuilder<User>()
+                .entityManagerFactory(entityManagerFactory)
+                .usePersist(true)                   // 새로 만든 entity라 merge로 select 할 필요가 없다
                 .build();
-
         itemWriter.afterPropertiesSet();
 
         return itemWriter;
     }
 
-    @Bean(JOB_NAME + "_clearUserStep")
-    public Step clearUserStep() {
-        return stepBuilderFactory.get(JOB_NAME + "_clearUserStep")
-                .tasklet(new ClearUserStep(userRepository))
-                .build();
-    }
-
-    @Bean(JOB_NAME + "_saveUserStep")
-    public Step saveUserStep() {
-        return stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
-                .build();
-    }
-
 
     @Bean(JOB_NAME + "_userLevelUpStep")
     public Step userLevelUpStep() throws Exception {
@@ -221,6 +186,7 @@ public class PartitionUserConfiguration {
                 .pageSize(CHUNK_SIZE)
                 .name(JOB_NAME + "_userItemReader")
                 .build();
+        itemReader.setTransacted(false);    // 읽은 User를 detach 해서 writer 외에 reader가 다시 flush 하지 않도록 한다
         itemReader.afterPropertiesSet();
 
         return itemReader;
@@ -237,12 +203,9 @@ public class PartitionUserConfiguration {
         };
     }
 
-    // Consumer<User>
+    // Consumer<User>, 등급 상향 후 chunk 단위 jdbc batch update
     private ItemWriter<? super User> itemWriter() {
-        return users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
+        return new UserLevelUpItemWriter(dataSource, transitionCounter);
     }
 
 }
@@ -0,0 +1,147 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.part4.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.integration.chunk.RemoteChunkingManagerStepBuilderFactory;
+import org.springframework.batch.integration.chunk.RemoteChunkingWorkerBuilder;
+import org.springframework.batch.integration.config.annotation.EnableBatchIntegration;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.PollableChannel;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+/**
+ * UserConfiguration.userLevelUpStep()의 remote chunking 버전.
+ * manager(userLevelUpStep)는 User를 읽기만 하고, 읽은 chunk를 requests channel로 보낸다.
+ * worker는 chunk를 받아 processor(등급 up 대상 판단)와 writer(저장)를 실행하고, 결과를 replies channel로 돌려준다.
+ * -> processor/writer가 무거울 때 읽기는 한 곳에서, 처리는 여러 worker로 나눠서 할 수 있다.
+ *
+ * requests channel은 같은 JVM의 taskExecutor로 worker를 실행하는 ExecutorChannel 이다. (broker 대신)
+ * worker를 다른 JVM으로 띄울때는 requests/replies channel을 원하는 전송 방식의 adapter로 바꾸면 된다.
+ *
+ * 실행 : --spring.profiles.active=remote-chunking --job.name=remoteChunkingUserJob
+ */
+@Slf4j
+@Profile("remote-chunking")
+@Configuration
+@EnableBatchIntegration
+@RequiredArgsConstructor
+public class RemoteChunkingUserConfiguration {
+
+    public static final String JOB_NAME = "remoteChunkingUserJob";
+
+    private final int CHUNK_SIZE = 1_000;
+    private final int THROTTLE_LIMIT = 8;           // 응답을 기다리지 않고 worker에게 보낼 수 있는 chunk 수
+
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final RemoteChunkingManagerStepBuilderFactory managerStepBuilderFactory;
+    private final RemoteChunkingWorkerBuilder<User, User> workerBuilder;
+    private final UserRepository userRepository;
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final DataSource dataSource;
+
+    // writer가 세고 listener가 출력하는 등급 상향 전 -> 후 건수
+    private final LevelUpTransitionCounter transitionCounter = new LevelUpTransitionCounter();
+
+    private final TaskExecutor taskExecutor;
+
+    @Bean(JOB_NAME)
+    public Job userJob() throws Exception {
+        return jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(clearUserStep())
+                .next(saveUserStep())
+                .next(userLevelUpStep())
+                .listener(new LevelUpJobExecutionListener(userRepository, transitionCounter))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_clearUserStep")
+    public Step clearUserStep() {
+        return stepBuilderFactory.get(JOB_NAME + "_clearUserStep")
+                .tasklet(new ClearUserStep(userRepository))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_saveUserStep")
+    public Step saveUserStep() {
+        return stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
+                .tasklet(new SaveUserTasklet(userRepository))
+                .build();
+    }
+
+    /**
+     * manager -> worker, 읽은 chunk를 보낸다.
+     */
+    @Bean(JOB_NAME + "_requests")
+    public MessageChannel requests() {
+        return new ExecutorChannel(taskExecutor);
+    }
+
+    /**
+     * worker -> manager, chunk 처리 결과를 돌려준다. manager가 꺼내가야 하므로 PollableChannel 이어야 한다.
+     */
+    @Bean(JOB_NAME + "_replies")
+    public PollableChannel replies() {
+        return new QueueChannel();
+    }
+
+    // manager step, 읽기만 하고 processor/writer는 worker에서 실행된다.
+    @Bean(JOB_NAME + "_userLevelUpStep")
+    public Step userLevelUpStep() throws Exception {
+        return managerStepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                .<User, User>chunk(CHUNK_SIZE)
+                .reader(itemReader())           // db에서 User 정보 가져온다
+                .outputChannel(requests())
+                .inputChannel(replies())
+                .throttleLimit(THROTTLE_LIMIT)
+                .build();
+    }
+
+    // worker, requests로 받은 chunk를 처리하고 replies로 결과를 보낸다.
+    @Bean(JOB_NAME + "_workerFlow")
+    public IntegrationFlow workerFlow() {
+        return workerBuilder
+                .itemProcessor(itemProcessor())                     // 등급 up
+                .itemWriter(new UserLevelUpItemWriter(dataSource, transitionCounter))  // 다시저장
+                .inputChannel(requests())
+                .outputChannel(replies())
+                .build();
+    }
+
+    private ItemReader<? extends User> itemReader() throws Exception {
+        UserKeysetPagingItemReader itemReader = new UserKeysetPagingItemReader(entityManagerFactory, CHUNK_SIZE, null, null);
+        itemReader.setName(JOB_NAME + "_userItemReader");
+
+        return itemReader;
+    }
+
+    // Function<User,User>
+    private ItemProcessor<User, User> itemProcessor() {
+        return user -> {
+            if( user.availableLevelUp()) {
+                return user;
+            }
+            // 등급 상향 대상이 아니라면, null을 return(처리를 하지 않는다)
+            return null;
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.part4.ClearUserStep;
+import fastcampus.spring.batch.part4.LevelUpJobExecutionListener;
+import fastcampus.spring.batch.part4.SaveUserTasklet;
+import fastcampus.spring.batch.part4.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * remote partitioning의 manager.
+ * UserLevelUpPartitioner로 나눈 partition을 JobRepository에 저장만 하고, worker가 같은 db를 polling 해서 가져가 userLevelUpStep을 실행한다.
+ * (worker 설정은 RemotePartitionWorkerConfiguration)
+ * manager도 JobRepository를 polling 해서 partition이 모두 끝났는지 확인한다. -> manager와 worker는 db만 공유하면 되고 broker가 필요 없다.
+ *
+ * 실행
+ *  - manager : --spring.profiles.active=remote-partitioning --job.name=remotePartitionUserJob
+ *  - worker(JVM 여러개) : --spring.profiles.active=remote-partitioning-worker --job.name=NONE
+ *  (같은 JVM에서 둘 다 실행하려면 --spring.profiles.active=remote-partitioning,remote-partitioning-worker)
+ */
+@Slf4j
+@Profile("remote-partitioning")
+@Configuration
+@RequiredArgsConstructor
+public class RemotePartitionUserConfiguration {
+
+    public static final String JOB_NAME = "remotePartitionUserJob";
+    public static final String WORKER_STEP_NAME = JOB_NAME + "_userLevelUpStep";
+
+    private final int GRID_SIZE = 8;
+    private final long POLL_INTERVAL_MILLIS = 1_000;
+
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final JobExplorer jobExplorer;
+    private final UserRepository userRepository;
+
+    @Bean(JOB_NAME)
+    public Job userJob() throws Exception {
+        return this.jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(clearUserStep())
+                .next(saveUserStep())
+                .next(userLevelUpManagerStep())
+                .listener(new LevelUpJobExecutionListener(userRepository))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_clearUserStep")
+    public Step clearUserStep() {
+        return stepBuilderFactory.get(JOB_NAME + "_clearUserStep")
+                .tasklet(new ClearUserStep(userRepository))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_saveUserStep")
+    public Step saveUserStep() {
+        return stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
+                .tasklet(new SaveUserTasklet(userRepository))
+                .build();
+    }
+
+    // 이것이 마스터스탭, 직접 step을 실행하지 않고 partition을 JobRepository에 저장만 한다.
+    @Bean(JOB_NAME + "_userLevelUpStep.manager")
+    public Step userLevelUpManagerStep() {
+        JobRepositoryPartitionHandler partitionHandler = new JobRepositoryPartitionHandler(jobExplorer);
+        partitionHandler.setGridSize(GRID_SIZE);
+        partitionHandler.setPollInterval(POLL_INTERVAL_MILLIS);
+
+        return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep.manager")
+                .partitioner(WORKER_STEP_NAME, new UserLevelUpPartitioner(userRepository))
+                .partitionHandler(partitionHandler)
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.part4.User;
+import fastcampus.spring.batch.part4.UserKeysetPagingItemReader;
+import fastcampus.spring.batch.part4.UserLevelUpItemWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import static fastcampus.spring.batch.part6.RemotePartitionUserConfiguration.JOB_NAME;
+import static fastcampus.spring.batch.part6.RemotePartitionUserConfiguration.WORKER_STEP_NAME;
+
+/**
+ * remote partitioning의 worker.
+ * manager가 JobRepository에 저장한 partition을 JobRepositoryPartitionWorker가 polling 해서 가져가 userLevelUpStep을 실행한다.
+ * 실행 결과는 응답하지 않고 JobRepository에 저장하며, manager는 이를 polling 한다.
+ *
+ * worker 하나하나가 별도의 context(JVM)로 떠도 되도록 batch 설정(JobRepository, step scope)을 직접 가진다. manager와는 db만 공유한다.
+ */
+@Profile("remote-partitioning-worker")
+@Configuration
+@EnableBatchProcessing
+@RequiredArgsConstructor
+public class RemotePartitionWorkerConfiguration {
+
+    private final int CHUNK_SIZE = 1_000;
+    private final int CONCURRENCY = 2;                  // worker(JVM) 하나에서 동시에 실행할 partition 수
+    private final long POLL_INTERVAL_MILLIS = 1_000;
+
+    private final StepBuilderFactory stepBuilderFactory;
+    private final JobExplorer jobExplorer;
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+
+    @Bean(JOB_NAME + "_partitionWorker")
+    public JobRepositoryPartitionWorker partitionWorker() {
+        JobRepositoryPartitionWorker worker = new JobRepositoryPartitionWorker(dataSource, jobExplorer, userLevelUpStep(), "BATCH_");
+        worker.setConcurrency(CONCURRENCY);
+        worker.setPollInterval(POLL_INTERVAL_MILLIS);
+
+        return worker;
+    }
+
+    @Bean(WORKER_STEP_NAME)
+    public Step userLevelUpStep() {
+        return stepBuilderFactory.get(WORKER_STEP_NAME)
+                .<User, User>chunk(CHUNK_SIZE)
+                .reader(itemReader(null, null))         // partition 범위의 User 정보 가져온다
+                .processor(itemProcessor())             // 등급 up
+                .writer(new UserLevelUpItemWriter(dataSource))  // 다시저장
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_workerItemReader")
+    @StepScope
+    UserKeysetPagingItemReader itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
+                                          @Value("#{stepExecutionContext[maxId]}") Long maxId) {
+        UserKeysetPagingItemReader itemReader = new UserKeysetPagingItemReader(entityManagerFactory, CHUNK_SIZE, minId, maxId);
+        itemReader.setName(JOB_NAME + "_userItemReader");
+
+        return itemReader;
+    }
+
+    // Function<User,User>
+    private ItemProcessor<User, User> itemProcessor() {
+        return user -> {
+            if( user.availableLevelUp()) {
+                return user;
+            }
+            // 등급 상향 대상이 아니라면, null을 return(처리를 하지 않는다)
+            return null;
+        };
+    }
+}
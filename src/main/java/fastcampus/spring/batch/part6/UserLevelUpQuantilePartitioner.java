@@ -0,0 +1,80 @@
+package fastcampus.spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * UserLevelUpPartitioner는 min ~ max id를 같은 간격으로 나누기 때문에, id 사이에 빈 구간이 있거나 특정 구간에 주문이 몰려있으면
+ * 어떤 partition은 금방 끝나고 한 partition만 오래 실행된다.
+ *
+ * 이 partitioner는 실제 데이터 분포를 보고 partition을 나눈다.
+ * - orderWeighted = false : 각 partition의 user 수가 같도록 id 경계를 정한다(분위수, ntile)
+ * - orderWeighted = true : 각 partition의 (user 수 + 주문 수)가 같도록 id 경계를 정한다. user 하나를 처리하는 비용이 주문 수에 비례하기 때문
+ *                          id 순서대로 누적한 가중치를 partition 당 가중치로 나눠서 partition 번호를 정한다.
+ * 경계는 db에서 window 함수로 계산하고, partition 수 만큼의 (min id, max id)만 받는다. (user id를 모두 가져오지 않는다)
+ */
+@Slf4j
+public class UserLevelUpQuantilePartitioner implements Partitioner {
+
+    private static final String QUANTILE_SQL =
+            "select min(id), max(id) from (select id, ntile(?) over (order by id) tile from user) t " +
+            "group by tile order by tile";
+
+    private static final String TOTAL_ORDER_WEIGHT_SQL =
+            "select count(*) + (select count(*) from orders where user_id is not null) from user";
+    private static final String ORDER_WEIGHTED_SQL =
+            "select min(id), max(id) from (" +
+            "select w.id, floor((sum(w.weight) over (order by w.id) - 1) / ?) tile from (" +
+            "select u.id, count(o.id) + 1 weight from user u left join orders o on o.user_id = u.id group by u.id) w) t " +
+            "group by tile order by tile";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean orderWeighted;
+
+    public UserLevelUpQuantilePartitioner(DataSource dataSource, boolean orderWeighted) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.orderWeighted = orderWeighted;
+    }
+
+    /**
+     * @param gridSize : slave의 사이즈이다
+     * @return {PartitionN : ExecutionContext(minId, maxId)}, UserLevelUpPartitioner와 같은 형식
+     */
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> result = new HashMap<>();
+        RowCallbackHandler collector = rs -> {
+            ExecutionContext value = new ExecutionContext();
+            value.putLong("minId", rs.getLong(1));
+            value.putLong("maxId", rs.getLong(2));
+            result.put("partition" + result.size(), value);
+        };
+
+        if (!orderWeighted) {
+            jdbcTemplate.query(QUANTILE_SQL, collector, gridSize);
+            log.info("{} partition 생성", result.size());
+            return result;
+        }
+
+        Long totalWeight = jdbcTemplate.queryForObject(TOTAL_ORDER_WEIGHT_SQL, Long.class);
+        if (Objects.isNull(totalWeight) || totalWeight == 0) {
+            return result;
+        }
+
+        // 각 partition이 가져갈 가중치, 올림해서 partition 수가 gridSize를 넘지 않도록 한다.
+        long targetWeight = (totalWeight + gridSize - 1) / gridSize;
+
+        jdbcTemplate.query(ORDER_WEIGHTED_SQL, collector, targetWeight);
+        log.info("{} partition 생성, 전체 가중치 {}, partition 당 가중치 {}", result.size(), totalWeight, targetWeight);
+
+        return result;
+    }
+}
@@ -0,0 +1,221 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.part4.User;
+import fastcampus.spring.batch.part4.UserKeysetPagingItemReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.NonTransientResourceException;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * multi-thread step에서 사용하는 User reader.
+ * 별도의 fetcher 쓰레드가 keyset paging으로 User를 미리 읽어 bounded queue에 넣고, step의 worker 쓰레드들은 queue에서 꺼내가기만 한다.
+ * -> db 조회 시간이 worker의 process/write와 겹쳐서 실행되고, worker끼리 page 조회를 기다리며 줄 서지 않는다.
+ *
+ * multi-thread step에서는 chunk가 순서대로 끝나지 않기 때문에 "마지막으로 읽은 id"를 저장하면 재시작 시 데이터가 누락될 수 있다.
+ * 그래서 아직 commit 되지 않은 id(queue에 있거나 worker가 처리 중인 id)를 inFlight에 들고 있다가,
+ * chunk가 commit 되면(afterChunk) 해당 쓰레드가 읽은 id를 제거한다.
+ * chunk에서 읽은 id는 ChunkContext에 담아둔다. rollback 된 chunk는 fault tolerant step이 같은 ChunkContext로 다시 처리(재시도, skip)하므로,
+ * 그 chunk가 끝나면(afterChunk) 함께 제거된다. step이 실패하면 inFlight에 남아 저장되는 위치가 그 id를 넘어가지 않는다.
+ * ExecutionContext에는 inFlight 중 가장 작은 id 바로 앞까지만 저장하므로, 재시작 시 누락 없이 다시 읽는다.(일부는 다시 처리될 수 있다)
+ *
+ * ChunkListener를 구현하고 있어 step의 reader로 설정하면 listener로도 자동 등록된다.
+ */
+@Slf4j
+public class UserPrefetchItemReader extends ItemStreamSupport implements ItemStreamReader<User>, ChunkListener {
+
+    private static final String LAST_ID = "lastId";
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+    private static final String CHUNK_IDS = UserPrefetchItemReader.class.getName() + ".chunkIds";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int pageSize;
+    private final int prefetchPageCount;
+
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final ThreadLocal<List<Long>> chunkIds = ThreadLocal.withInitial(ArrayList::new);
+
+    private BlockingQueue<User> queue;
+    private Thread fetcher;
+    private Long startId;
+
+    private volatile Long lastEnqueuedId;
+    private volatile boolean finished;
+    private volatile Exception failure;
+
+    private String name;
+    private boolean saveState = true;
+
+    /**
+     * @param prefetchPageCount : 미리 읽어 queue에 담아둘 page 수
+     */
+    public UserPrefetchItemReader(EntityManagerFactory entityManagerFactory, int pageSize, int prefetchPageCount) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.pageSize = pageSize;
+        this.prefetchPageCount = prefetchPageCount;
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        this.name = name;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+
+        startId = null;
+        if (saveState && executionContext.containsKey(getExecutionContextKey(LAST_ID))) {
+            startId = executionContext.getLong(getExecutionContextKey(LAST_ID));
+        }
+
+        queue = new ArrayBlockingQueue<>(pageSize * prefetchPageCount);
+        inFlight.clear();
+        lastEnqueuedId = startId;
+        finished = false;
+        failure = null;
+
+        fetcher = new Thread(this::fetch, name + "-fetcher");
+        fetcher.setDaemon(true);
+        fetcher.start();
+    }
+
+    private void fetch() {
+        Long minId = Objects.isNull(startId) ? null : startId + 1;
+        UserKeysetPagingItemReader delegate = new UserKeysetPagingItemReader(entityManagerFactory, pageSize, minId, null);
+        delegate.setName(name + "-delegate");
+        delegate.setSaveState(false);
+
+        try {
+            delegate.open(new ExecutionContext());
+            User user;
+            while ((user = delegate.read()) != null) {
+                // queue에 넣기 전에 inFlight에 먼저 등록해야 저장되는 위치가 이 id를 넘어가지 않는다.
+                inFlight.add(user.getId());
+                lastEnqueuedId = user.getId();
+                queue.put(user);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("User prefetch 중 오류가 발생했습니다.", e);
+            failure = e;
+        } finally {
+            delegate.close();
+            finished = true;
+        }
+    }
+
+    @Override
+    public User read() throws Exception {
+        while (true) {
+            if (Objects.nonNull(failure)) {
+                throw new NonTransientResourceException("User prefetch 중 오류가 발생했습니다.", failure);
+            }
+
+            // poll 전에 읽어둬야, finished 이고 poll 결과가 없을때 queue가 비었다고 확신할 수 있다.
+            boolean done = finished;
+            User user = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (Objects.nonNull(user)) {
+                chunkIds.get().add(user.getId());
+                return user;
+            }
+            if (done) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+
+        if (saveState) {
+            Long committedId = committedId();
+            if (Objects.nonNull(committedId)) {
+                executionContext.putLong(getExecutionContextKey(LAST_ID), committedId);
+            }
+        }
+    }
+
+    /**
+     * 이 id 까지는 모두 commit 되었다.
+     */
+    private Long committedId() {
+        Long lastId = lastEnqueuedId;
+        try {
+            return inFlight.first() - 1;
+        } catch (NoSuchElementException e) {
+            return lastId;
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+
+        if (Objects.nonNull(fetcher)) {
+            fetcher.interrupt();
+            try {
+                fetcher.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            fetcher = null;
+        }
+        if (Objects.nonNull(queue)) {
+            queue.clear();
+        }
+        inFlight.clear();
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        // 다시 처리하는 chunk면 rollback 전에 읽은 id가 그대로 들어있다.
+        chunkIds.set(chunkIds(context));
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        // 이 쓰레드가 읽은 chunk가 commit 되었다.
+        List<Long> ids = chunkIds(context);
+        inFlight.removeAll(ids);
+        ids.clear();
+        chunkIds.remove();
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        // rollback 된 id는 ChunkContext에 남겨서, 다시 처리한 chunk가 끝날때 제거한다. 그 전까지 저장되는 위치는 이 id를 넘어가지 않는다.
+        chunkIds.remove();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> chunkIds(ChunkContext context) {
+        List<Long> ids = (List<Long>) context.getAttribute(CHUNK_IDS);
+        if (Objects.isNull(ids)) {
+            ids = new ArrayList<>();
+            context.setAttribute(CHUNK_IDS, ids);
+        }
+        return ids;
+    }
+}
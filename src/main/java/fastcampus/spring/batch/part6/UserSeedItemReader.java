@@ -0,0 +1,55 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.part4.User;
+import fastcampus.spring.batch.part4.UserSeedDistribution;
+import fastcampus.spring.batch.part5.Orders;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import java.util.Collections;
+
+/**
+ * SaveUserTasklet처럼 전부 만들어 두지 않고, read() 할때마다 index 번째 User(주문 1건)를 만든다.
+ * index [startIndex, endIndex) 범위만 만들기 때문에 partition 마다 나눠서 만들 수 있다.
+ *
+ * User의 값은 index와 UserSeedDistribution만으로 정해지므로 따로 저장할 상태가 없다.
+ * 재시작 시 부모 클래스가 저장해 둔 read count만 복원하면 그 다음 index부터 같은 데이터를 이어서 만든다.
+ */
+public class UserSeedItemReader extends AbstractItemCountingItemStreamItemReader<User> {
+
+    private final UserSeedDistribution distribution;
+    private final long startIndex;
+
+    public UserSeedItemReader(UserSeedDistribution distribution, long startIndex, long endIndex) {
+        this.distribution = distribution;
+        this.startIndex = startIndex;
+        setMaxItemCount((int) (endIndex - startIndex));
+    }
+
+    @Override
+    protected User doRead() {
+        // read()가 item count를 먼저 올리고 doRead()를 호출한다.
+        long index = startIndex + getCurrentItemCount() - 1;
+
+        return User.builder()
+                .orders(Collections.singletonList(Orders.builder()
+                        .amount(distribution.amountOf(index))
+                        .createdDate(distribution.createdDateOf(index))
+                        .itemName("item" + index)
+                        .build()))
+                .username("test username" + index)
+                .build();
+    }
+
+    // 건너뛸 item을 만들 필요 없이 count만 맞추면 된다.
+    @Override
+    protected void jumpToItem(int itemIndex) {
+    }
+
+    @Override
+    protected void doOpen() {
+    }
+
+    @Override
+    protected void doClose() {
+    }
+}
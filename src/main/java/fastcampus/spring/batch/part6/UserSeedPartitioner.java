@@ -0,0 +1,36 @@
+package fastcampus.spring.batch.part6;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 만들 유저의 index [0, seedSize)를 gridSize 개의 범위로 나눈다.
+ * 각 partition의 UserSeedItemReader는 ExecutionContext의 startIndex, endIndex 범위만 만든다.
+ */
+@RequiredArgsConstructor
+public class UserSeedPartitioner implements Partitioner {
+
+    private final long seedSize;
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        long targetSize = (seedSize + gridSize - 1) / gridSize;
+
+        Map<String, ExecutionContext> result = new HashMap<>();
+
+        long number = 0;
+        for (long start = 0; start < seedSize; start += targetSize) {
+            ExecutionContext value = new ExecutionContext();
+            value.putLong("startIndex", start);
+            value.putLong("endIndex", Math.min(start + targetSize, seedSize));
+            result.put("partition" + number, value);
+            number++;
+        }
+
+        return result;
+    }
+}
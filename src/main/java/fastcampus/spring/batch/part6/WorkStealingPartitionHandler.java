@@ -0,0 +1,104 @@
+package fastcampus.spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobInterruptedException;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.support.AbstractPartitionHandler;
+import org.springframework.batch.core.step.StepHolder;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.FutureTask;
+
+/**
+ * TaskExecutorPartitionHandler는 partition 하나당 쓰레드 하나를 할당하기 때문에, 느린 partition 하나가 manager step 전체를 늦춘다.
+ *
+ * 이 handler는 gridSize 만큼 작은 id 범위(partition)를 많이 만들어 lock-free queue에 넣고,
+ * workerCount 개의 쓰레드가 하나를 끝내는대로 다음 범위를 꺼내간다(work stealing).
+ * -> 데이터가 고르지 않아도 먼저 끝난 쓰레드가 남은 범위를 가져가므로 마지막 partition 하나만 오래 도는 일이 줄어든다.
+ *
+ * 범위 하나하나가 각각의 StepExecution 이므로 끝날때마다 JobRepository에 COMPLETED로 저장된다.
+ * 재시작 시 StepExecutionSplitter가 이미 COMPLETED 된 범위는 제외하므로, 끝나지 않은 범위만 다시 실행한다.
+ */
+@Slf4j
+public class WorkStealingPartitionHandler extends AbstractPartitionHandler implements StepHolder, InitializingBean {
+
+    private Step step;
+    private TaskExecutor taskExecutor = new SyncTaskExecutor();
+    private int workerCount = 1;
+
+    public void setStep(Step step) {
+        this.step = step;
+    }
+
+    @Override
+    public Step getStep() {
+        return step;
+    }
+
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * 동시에 범위를 처리할 쓰레드 수, 나눌 범위의 수는 setGridSize()로 정한다.
+     */
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(step, "step은 필수입니다.");
+        Assert.isTrue(workerCount > 0, "workerCount는 1 이상이어야 합니다.");
+    }
+
+    @Override
+    protected Set<StepExecution> doHandle(StepExecution managerStepExecution,
+                                          Set<StepExecution> partitionStepExecutions) throws Exception {
+        Queue<StepExecution> ranges = new ConcurrentLinkedQueue<>(partitionStepExecutions);
+
+        List<FutureTask<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(workerCount, partitionStepExecutions.size()); i++) {
+            FutureTask<Void> worker = new FutureTask<>(() -> {
+                steal(ranges);
+                return null;
+            });
+            workers.add(worker);
+            taskExecutor.execute(worker);
+        }
+
+        for (FutureTask<Void> worker : workers) {
+            worker.get();
+        }
+
+        return partitionStepExecutions;
+    }
+
+    private void steal(Queue<StepExecution> ranges) {
+        StepExecution stepExecution;
+        while ((stepExecution = ranges.poll()) != null) {
+            try {
+                step.execute(stepExecution);
+            } catch (JobInterruptedException e) {
+                // job이 중지되었으면 이 쓰레드는 더이상 범위를 가져가지 않는다.
+                log.info("{} 중지", stepExecution.getStepName());
+                stepExecution.setStatus(BatchStatus.STOPPED);
+                return;
+            } catch (Throwable e) {
+                log.error("{} 실행 중 오류가 발생했습니다.", stepExecution.getStepName(), e);
+                stepExecution.setStatus(BatchStatus.FAILED);
+                stepExecution.addFailureException(e);
+            }
+        }
+    }
+}
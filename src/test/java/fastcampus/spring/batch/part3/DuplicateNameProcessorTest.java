@@ -0,0 +1,175 @@
+package fastcampus.spring.batch.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Slf4j
+class DuplicateNameProcessorTest {
+
+    private static final int NAMES = 1_000_000;
+
+    @TempDir
+    Path spillDirectory;
+
+    // commit 된 이름 (db 대신)
+    private final Set<String> store = ConcurrentHashMap.newKeySet();
+
+    @Test
+    public void test_filter_duplicate_in_chunk_and_after_commit() throws Exception {
+        for (boolean bloom : new boolean[]{false, true}) {
+            store.clear();
+            DuplicateNameProcessor processor = processor(bloom);
+            processor.open(new ExecutionContext());
+
+            // 같은 chunk 안의 중복
+            List<Person> written = process(processor, "고동기", "최동기", "고동기");
+            Assertions.assertThat(names(written)).containsExactly("고동기", "최동기");
+            commit(processor, written);
+
+            // commit 된 이름과 중복
+            Assertions.assertThat(names(process(processor, "최동기", "민동기"))).containsExactly("민동기");
+        }
+    }
+
+    @Test
+    public void test_reprocess_same_item_after_rollback() throws Exception {
+        DuplicateNameProcessor processor = processor(false);
+        processor.open(new ExecutionContext());
+
+        Person person = new Person(1, "고동기", "1", "11");
+        Assertions.assertThat(processor.process(person)).isSameAs(person);
+
+        // fault tolerant 재처리 : 같은 item은 중복이 아니다.
+        Assertions.assertThat(processor.process(person)).isSameAs(person);
+
+        // rollback 후 다시 처리해도 저장된 적이 없으므로 중복이 아니다.
+        processor.afterChunkError(null);
+        Assertions.assertThat(processor.process(new Person(1, "고동기", "1", "11"))).isNotNull();
+    }
+
+    @Test
+    public void test_concurrent_same_names_accept_once() throws Exception {
+        DuplicateNameProcessor processor = processor(true);
+        processor.open(new ExecutionContext());
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int accepted = 0;
+                for (int i = 0; i < 10_000; i++) {
+                    if (processor.process(new Person(i, "name" + i, "1", "11")) != null) {
+                        accepted++;
+                    }
+                }
+                return accepted;
+            }));
+        }
+        start.countDown();
+
+        int accepted = 0;
+        for (Future<Integer> result : results) {
+            accepted += result.get();
+        }
+        executor.shutdown();
+
+        Assertions.assertThat(accepted).isEqualTo(10_000);
+    }
+
+    @Test
+    public void test_restart_keeps_seen_names() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+
+        DuplicateNameProcessor processor = processor(true);
+        processor.open(executionContext);
+        List<Person> written = process(processor, "고동기", "최동기");
+        processor.update(executionContext);
+        commit(processor, written);
+
+        // commit 되지 않은 chunk
+        process(processor, "민동기");
+        processor.close();
+
+        // 재시작 : commit 된 이름은 중복, commit 되지 않은 이름은 저장한다.
+        DuplicateNameProcessor restarted = processor(true);
+        restarted.open(executionContext);
+        Assertions.assertThat(names(process(restarted, "고동기", "민동기", "최동기"))).containsExactly("민동기");
+    }
+
+    /**
+     * 백만 개의 서로 다른 이름을 기억하는데 필요한 heap
+     */
+    @Test
+    public void test_heap_per_million_names() {
+        NameHashSet hashes = new NameHashSet(NAMES);
+        NameBloomFilter bloomFilter = new NameBloomFilter(NAMES, 0.01);
+
+        for (int i = 0; i < NAMES; i++) {
+            long hash = NameHashSet.hash("name" + i);
+            hashes.add(hash);
+            bloomFilter.put(hash);
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        Set<String> dupSet = new HashSet<>();
+        for (int i = 0; i < NAMES; i++) {
+            dupSet.add("name" + i);
+        }
+        System.gc();
+        long hashSetBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+
+        log.info("이름 {}개 - HashSet<String> : 약 {}MB, NameHashSet : {}MB, NameBloomFilter(1%) : {}MB",
+                dupSet.size(), hashSetBytes / 1024 / 1024, hashes.memoryBytes() / 1024 / 1024, bloomFilter.memoryBytes() / 1024 / 1024);
+
+        Assertions.assertThat(hashes.size()).isEqualTo(NAMES);
+        Assertions.assertThat(hashes.memoryBytes()).isLessThan(hashSetBytes);
+        // 1% 오탐 : 10 bit 정도
+        Assertions.assertThat(bloomFilter.memoryBytes()).isLessThanOrEqualTo(2L * 1024 * 1024);
+    }
+
+    private DuplicateNameProcessor processor(boolean bloom) {
+        return new DuplicateNameProcessor(new NameHashSet(16), bloom ? new NameBloomFilter(1_000, 0.01) : null,
+                store::contains, spillDirectory);
+    }
+
+    private List<Person> process(DuplicateNameProcessor processor, String... names) throws Exception {
+        List<Person> result = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            Person person = processor.process(new Person(i, names[i], "1", "11"));
+            if (person != null) {
+                result.add(person);
+            }
+        }
+        return result;
+    }
+
+    private void commit(DuplicateNameProcessor processor, List<Person> written) {
+        written.forEach(x -> store.add(x.getName()));
+        processor.afterChunk(null);
+    }
+
+    private List<String> names(List<Person> persons) {
+        List<String> result = new ArrayList<>();
+        persons.forEach(x -> result.add(x.getName()));
+        return result;
+    }
+}
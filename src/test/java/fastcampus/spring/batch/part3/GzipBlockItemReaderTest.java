@@ -0,0 +1,295 @@
+package fastcampus.spring.batch.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GzipFlatFileItemWriter, GzipBlockItemReader, DecompressingResource
+ */
+class GzipBlockItemReaderTest {
+
+    private static final int CHUNK_SIZE = 10;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void test_writer_same_as_flat_file_item_writer() throws Exception {
+        List<Person> persons = readAll(flatFileItemReader(new ClassPathResource("test.csv")));
+
+        Path plain = tempDir.resolve("plain.csv");
+        FlatFileItemWriter<Person> flatWriter = new FlatFileItemWriterBuilder<Person>()
+                .name("csvFileItemWriter")
+                .encoding("UTF-8")
+                .resource(new FileSystemResource(plain.toFile()))
+                .lineAggregator(lineAggregator())
+                .headerCallback(writer -> writer.write("id, 이름, 나이, 거주지"))
+                .footerCallback(writer -> writer.write("=========="))
+                .build();
+        flatWriter.afterPropertiesSet();
+        writeAll(flatWriter, persons);
+
+        Path gzip = tempDir.resolve("plain.csv.gz");
+        GzipFlatFileItemWriter<Person> gzipWriter = gzipWriter(gzip);
+        writeAll(gzipWriter, persons);
+
+        Assertions.assertThat(gunzip(gzip)).isEqualTo(Files.readAllBytes(plain));
+        // 헤더 + chunk마다 + footer 블록
+        Assertions.assertThat(blockCount(gzip)).isEqualTo(1 + (persons.size() + CHUNK_SIZE - 1) / CHUNK_SIZE + 1);
+    }
+
+    @Test
+    public void test_writer_restart_truncates_uncommitted_block() throws Exception {
+        List<Person> persons = readAll(flatFileItemReader(new ClassPathResource("test.csv")));
+
+        Path expected = tempDir.resolve("expected.csv.gz");
+        writeAll(gzipWriter(expected), persons);
+
+        // 3 chunk를 commit 하고, 4번째 chunk를 쓰다가 실패
+        Path actual = tempDir.resolve("actual.csv.gz");
+        ExecutionContext executionContext = new ExecutionContext();
+        GzipFlatFileItemWriter<Person> writer = gzipWriter(actual);
+        writer.open(executionContext);
+        for (int i = 0; i < 3; i++) {
+            writer.write(persons.subList(i * CHUNK_SIZE, (i + 1) * CHUNK_SIZE));
+            writer.update(executionContext);
+        }
+        writer.write(persons.subList(3 * CHUNK_SIZE, 4 * CHUNK_SIZE));
+        writer.close();
+
+        // 재시작하면 4번째 chunk부터 다시 쓴다.
+        GzipFlatFileItemWriter<Person> restarted = gzipWriter(actual);
+        restarted.open(executionContext);
+        for (int i = 3 * CHUNK_SIZE; i < persons.size(); i += CHUNK_SIZE) {
+            restarted.write(persons.subList(i, Math.min(i + CHUNK_SIZE, persons.size())));
+            restarted.update(executionContext);
+        }
+        restarted.close();
+
+        Assertions.assertThat(gunzip(actual)).isEqualTo(gunzip(expected));
+    }
+
+    @Test
+    public void test_writer_discards_rolled_back_block() throws Exception {
+        List<Person> persons = readAll(flatFileItemReader(new ClassPathResource("test.csv")));
+
+        Path expected = tempDir.resolve("expected.csv.gz");
+        writeAll(gzipWriter(expected), persons);
+
+        // 트랜잭션 안에서 chunk마다 쓰고, 2번째 chunk는 한번 rollback 된 뒤 다시 쓴다.
+        Path actual = tempDir.resolve("actual.csv.gz");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+        GzipFlatFileItemWriter<Person> writer = gzipWriter(actual);
+        writer.open(new ExecutionContext());
+        for (int i = 0; i < persons.size(); i += CHUNK_SIZE) {
+            List<Person> chunk = persons.subList(i, Math.min(i + CHUNK_SIZE, persons.size()));
+            if (i == CHUNK_SIZE) {
+                transactionTemplate.execute(status -> {
+                    write(writer, chunk);
+                    status.setRollbackOnly();
+                    return null;
+                });
+            }
+            transactionTemplate.execute(status -> write(writer, chunk));
+        }
+        writer.close();
+
+        Assertions.assertThat(gunzip(actual)).isEqualTo(gunzip(expected));
+    }
+
+    private Void write(GzipFlatFileItemWriter<Person> writer, List<Person> chunk) {
+        try {
+            writer.write(chunk);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return null;
+    }
+
+    @Test
+    public void test_readers_same_as_plain_file() throws Exception {
+        List<String> plain = toStrings(readAll(flatFileItemReader(new ClassPathResource("test.csv"))));
+
+        Path blocks = tempDir.resolve("blocks.csv.gz");
+        writeAll(gzipWriter(blocks), readAll(flatFileItemReader(new ClassPathResource("test.csv"))));
+        Path single = gzipCommand(tempDir.resolve("single.csv.gz"));
+
+        for (Path file : new Path[]{blocks, single}) {
+            Assertions.assertThat(toStrings(readAll(flatFileItemReader(new DecompressingResource(new FileSystemResource(file.toFile()))))))
+                    .isEqualTo(plain);
+            Assertions.assertThat(toStrings(readAll(gzipBlockItemReader(file)))).isEqualTo(plain);
+        }
+
+        // gzip이 아니면 그대로 읽는다.
+        Assertions.assertThat(toStrings(readAll(flatFileItemReader(new DecompressingResource(new ClassPathResource("test.csv"))))))
+                .isEqualTo(plain);
+    }
+
+    @Test
+    public void test_block_reader_restart() throws Exception {
+        List<String> plain = toStrings(readAll(flatFileItemReader(new ClassPathResource("test.csv"))));
+
+        Path blocks = tempDir.resolve("blocks.csv.gz");
+        writeAll(gzipWriter(blocks), readAll(flatFileItemReader(new ClassPathResource("test.csv"))));
+
+        for (Path file : new Path[]{blocks, gzipCommand(tempDir.resolve("single.csv.gz"))}) {
+            // 55건 읽고 commit 한 뒤 실패
+            ExecutionContext executionContext = new ExecutionContext();
+            GzipBlockItemReader<Person> reader = gzipBlockItemReader(file);
+            reader.open(executionContext);
+            List<Person> actual = new ArrayList<>();
+            for (int i = 0; i < 55; i++) {
+                actual.add(reader.read());
+            }
+            reader.update(executionContext);
+            reader.read();
+            reader.close();
+
+            // 재시작하면 56번째부터 읽는다.
+            GzipBlockItemReader<Person> restarted = gzipBlockItemReader(file);
+            restarted.open(executionContext);
+            Person person;
+            while ((person = restarted.read()) != null) {
+                actual.add(person);
+            }
+            restarted.close();
+
+            Assertions.assertThat(toStrings(actual)).isEqualTo(plain);
+        }
+    }
+
+    private GzipFlatFileItemWriter<Person> gzipWriter(Path path) {
+        GzipFlatFileItemWriter<Person> itemWriter = new GzipFlatFileItemWriter<>(path, lineAggregator());
+        itemWriter.setName("csvGzipFileItemWriter");
+        itemWriter.setHeaderCallback(writer -> writer.write("id, 이름, 나이, 거주지"));
+        itemWriter.setFooterCallback(writer -> writer.write("=========="));
+        return itemWriter;
+    }
+
+    private GzipBlockItemReader<Person> gzipBlockItemReader(Path path) {
+        GzipBlockItemReader<Person> itemReader = new GzipBlockItemReader<>(path, lineMapper(), 1);
+        itemReader.setName("gzipBlockItemReader");
+        return itemReader;
+    }
+
+    private FlatFileItemReader<Person> flatFileItemReader(Resource resource) throws Exception {
+        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
+                .name("csvFileItemReader")
+                .encoding("UTF-8")
+                .resource(resource)
+                .linesToSkip(1)
+                .lineMapper(lineMapper())
+                .build();
+        itemReader.afterPropertiesSet();
+        return itemReader;
+    }
+
+    private DefaultLineMapper<Person> lineMapper() {
+        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
+        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+        tokenizer.setNames("id", "name", "age", "address");
+        lineMapper.setLineTokenizer(tokenizer);
+        lineMapper.setFieldSetMapper(fieldSet -> new Person(fieldSet.readInt("id"),
+                fieldSet.readString("name"), fieldSet.readString("age"), fieldSet.readString("address")));
+        return lineMapper;
+    }
+
+    private DelimitedLineAggregator<Person> lineAggregator() {
+        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(new String[]{"id", "name", "age", "address"});
+
+        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
+        lineAggregator.setDelimiter(",");
+        lineAggregator.setFieldExtractor(fieldExtractor);
+        return lineAggregator;
+    }
+
+    // gzip 명령처럼 블록 하나로 압축한 test.csv
+    private Path gzipCommand(Path path) throws Exception {
+        try (InputStream in = new ClassPathResource("test.csv").getInputStream();
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+            StreamUtils.copy(in, out);
+        }
+        return path;
+    }
+
+    private byte[] gunzip(Path path) throws Exception {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+
+    // 압축을 푼 byte가 있는 블록 수
+    private int blockCount(Path path) throws Exception {
+        int count = 0;
+        try (GzipBlockInputStream in = new GzipBlockInputStream(FileChannel.open(path))) {
+            long lastOffset = -1;
+            long offset = in.position()[0];
+            while (in.read() != -1) {
+                if (offset != lastOffset) {
+                    count++;
+                    lastOffset = offset;
+                }
+                offset = in.position()[0];
+            }
+        }
+        return count;
+    }
+
+    private void writeAll(ItemStreamWriter<Person> writer, List<Person> persons) throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        for (int i = 0; i < persons.size(); i += CHUNK_SIZE) {
+            writer.write(persons.subList(i, Math.min(i + CHUNK_SIZE, persons.size())));
+            writer.update(executionContext);
+        }
+        writer.close();
+    }
+
+    private List<Person> readAll(ItemStreamReader<Person> reader) throws Exception {
+        List<Person> result = new ArrayList<>();
+        reader.open(new ExecutionContext());
+        Person person;
+        while ((person = reader.read()) != null) {
+            result.add(person);
+        }
+        reader.close();
+        return result;
+    }
+
+    private List<String> toStrings(List<Person> persons) {
+        List<String> result = new ArrayList<>();
+        for (Person person : persons) {
+            result.add(person.getId() + "|" + person.getName() + "|" + person.getAge() + "|" + person.getAddress());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,184 @@
+package fastcampus.spring.batch.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FlatFileItemReader + DefaultLineMapper와 MappedPersonCsvItemReader 비교
+ */
+@Slf4j
+class MappedPersonCsvItemReaderTest {
+
+    private static final int LINES = 200_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void test_same_as_flat_file_item_reader() throws Exception {
+        Path file = new ClassPathResource("test.csv").getFile().toPath();
+
+        List<String> flat = readAll(flatFileItemReader(file));
+        List<String> mapped = readAll(mappedReader(file, 0, Files.size(file)));
+
+        // 이름이 없는 줄(101~103)도 같은 값으로 읽는다.
+        Assertions.assertThat(mapped).hasSize(103).isEqualTo(flat);
+    }
+
+    @Test
+    public void test_partitions_read_every_line_once() throws Exception {
+        Path file = scaledCsv(100_003, "\r\n");
+
+        List<String> expected = readAll(flatFileItemReader(file));
+
+        List<String> actual = new ArrayList<>();
+        Map<String, ExecutionContext> partitions = new PersonCsvBytePartitioner(file).partition(7);
+        partitions.values().stream()
+                .sorted((a, b) -> Long.compare(a.getLong("startOffset"), b.getLong("startOffset")))
+                .forEach(x -> actual.addAll(readAll(mappedReader(file, x.getLong("startOffset"), x.getLong("endOffset")))));
+
+        Assertions.assertThat(partitions).hasSize(7);
+        Assertions.assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void test_restart_from_byte_offset() throws Exception {
+        Path file = scaledCsv(1_000, "\n");
+        List<String> expected = readAll(mappedReader(file, 0, Files.size(file)));
+
+        // 300건 읽고 commit 한 뒤 실패
+        ExecutionContext executionContext = new ExecutionContext();
+        MappedPersonCsvItemReader reader = mappedReader(file, 0, Files.size(file));
+        reader.open(executionContext);
+        List<String> actual = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            actual.add(toString(reader.read()));
+        }
+        reader.update(executionContext);
+        reader.read();
+        reader.close();
+
+        // 재시작하면 301번째 줄부터 읽는다.
+        MappedPersonCsvItemReader restarted = mappedReader(file, 0, Files.size(file));
+        restarted.open(executionContext);
+        Person person;
+        while ((person = restarted.read()) != null) {
+            actual.add(toString(person));
+        }
+        restarted.close();
+
+        Assertions.assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void test_compare_time() throws Exception {
+        Path file = scaledCsv(LINES, "\n");
+
+        // warm-up
+        count(flatFileItemReader(file));
+        count(mappedReader(file, 0, Files.size(file)));
+
+        long start = System.nanoTime();
+        long flatCount = count(flatFileItemReader(file));
+        long flatNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long mappedCount = count(mappedReader(file, 0, Files.size(file)));
+        long mappedNanos = System.nanoTime() - start;
+
+        log.info("{}줄 ({}MB) - FlatFileItemReader : {}ms, MappedPersonCsvItemReader : {}ms",
+                LINES, Files.size(file) / 1024 / 1024, flatNanos / 1_000_000, mappedNanos / 1_000_000);
+
+        // 시간은 실행 환경마다 달라서 기록만 하고, 읽은 건수만 검증한다.
+        Assertions.assertThat(mappedCount).isEqualTo(flatCount).isEqualTo(LINES);
+    }
+
+    // test.csv의 줄을 id만 바꿔서 lines 줄로 늘린다.
+    private Path scaledCsv(int lines, String lineSeparator) throws Exception {
+        List<String> rows = Files.readAllLines(new ClassPathResource("test.csv").getFile().toPath(), StandardCharsets.UTF_8);
+
+        Path file = tempDir.resolve("person-" + lines + ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(rows.get(0));
+            for (int i = 0; i < lines; i++) {
+                String row = rows.get(1 + i % (rows.size() - 1));
+                writer.write(lineSeparator);
+                writer.write((i + 1) + row.substring(row.indexOf(',')));
+            }
+        }
+        return file;
+    }
+
+    private MappedPersonCsvItemReader mappedReader(Path file, long startOffset, long endOffset) {
+        MappedPersonCsvItemReader itemReader = new MappedPersonCsvItemReader(file, startOffset, endOffset, true);
+        itemReader.setName("mappedCsvFileItemReader");
+        return itemReader;
+    }
+
+    private FlatFileItemReader<Person> flatFileItemReader(Path file) throws Exception {
+        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
+        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+        tokenizer.setNames("id", "name", "age", "address");
+        lineMapper.setLineTokenizer(tokenizer);
+        lineMapper.setFieldSetMapper(fieldSet -> new Person(fieldSet.readInt("id"),
+                fieldSet.readString("name"), fieldSet.readString("age"), fieldSet.readString("address")));
+
+        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
+                .name("csvFileItemReader")
+                .encoding("UTF-8")
+                .resource(new FileSystemResource(file))
+                .linesToSkip(1)
+                .lineMapper(lineMapper)
+                .build();
+        itemReader.afterPropertiesSet();
+        return itemReader;
+    }
+
+    private List<String> readAll(ItemStreamReader<Person> reader) {
+        List<String> result = new ArrayList<>();
+        try {
+            reader.open(new ExecutionContext());
+            Person person;
+            while ((person = reader.read()) != null) {
+                result.add(toString(person));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    private long count(ItemStreamReader<Person> reader) throws Exception {
+        long count = 0;
+        reader.open(new ExecutionContext());
+        while (reader.read() != null) {
+            count++;
+        }
+        reader.close();
+        return count;
+    }
+
+    private String toString(Person person) {
+        return person.getId() + "|" + person.getName() + "|" + person.getAge() + "|" + person.getAddress();
+    }
+}
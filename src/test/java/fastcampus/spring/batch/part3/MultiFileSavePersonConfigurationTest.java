@@ -0,0 +1,136 @@
+package fastcampus.spring.batch.part3;
+
+import fastcampus.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {MultiFileSavePersonConfiguration.class, TestConfiguration.class})
+class MultiFileSavePersonConfigurationTest {
+
+    private static final int FILE_COUNT = 4;
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @TempDir
+    Path inputDirectory;
+
+    private List<String> lines;
+
+    /**
+     * test.csv(103명)를 복사한 파일 4개
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        personRepository.deleteAllInBatch();
+
+        lines = Files.readAllLines(new ClassPathResource("test.csv").getFile().toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            Files.write(inputDirectory.resolve("person-" + i + ".csv"), lines, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void test_partition_per_file() throws Exception {
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        List<StepExecution> partitions = partitions(jobExecution);
+        Assertions.assertThat(partitions).hasSize(FILE_COUNT);
+        Assertions.assertThat(partitions).allMatch(x -> x.getWriteCount() == 103);
+        Assertions.assertThat(personRepository.count()).isEqualTo(FILE_COUNT * 103L);
+    }
+
+    @Test
+    public void test_db_dedup_across_partitions() throws Exception {
+        long names = lines.stream()
+                .skip(1)
+                .map(x -> x.split(",", -1)[1])
+                .map(x -> x.isEmpty() ? "UNKOWN" : x)
+                .distinct()
+                .count();
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder(jobParameters())
+                .addString("dedup", "db")
+                .toJobParameters());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        // 4개 partition이 같은 이름을 동시에 저장해도 이름마다 하나만 남는다.
+        Assertions.assertThat(personRepository.count()).isEqualTo(names);
+        Assertions.assertThat(partitions(jobExecution).stream()
+                .mapToLong(x -> x.getExecutionContext().getLong(PersonUpsertItemWriter.DUPLICATE_COUNT, 0L))
+                .sum())
+                .isEqualTo(FILE_COUNT * 103L - names);
+    }
+
+    @Test
+    public void test_restart_only_unfinished_file() throws Exception {
+        // person-2.csv의 50번째 사람은 id가 숫자가 아니다.
+        List<String> broken = lines.stream().collect(Collectors.toList());
+        broken.set(50, "abc" + broken.get(50).substring(broken.get(50).indexOf(',')));
+        Files.write(inputDirectory.resolve("person-2.csv"), broken, StandardCharsets.UTF_8);
+
+        JobParameters jobParameters = jobParameters();
+        JobExecution failed = jobLauncherTestUtils.launchJob(jobParameters);
+
+        Assertions.assertThat(failed.getStatus()).isEqualTo(BatchStatus.FAILED);
+        Assertions.assertThat(partitions(failed))
+                .filteredOn(x -> x.getStatus() == BatchStatus.FAILED)
+                .hasSize(1);
+
+        // 파일을 고치고 같은 jobParameters로 재시작
+        Files.write(inputDirectory.resolve("person-2.csv"), lines, StandardCharsets.UTF_8);
+        JobExecution restarted = jobLauncherTestUtils.launchJob(jobParameters);
+
+        Assertions.assertThat(restarted.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(restarted.getJobId()).isEqualTo(failed.getJobId());
+
+        // 실패한 파일만 다시 실행하고, 그 파일도 마지막 commit 이후부터 읽는다. -> 중복 저장이 없다.
+        Assertions.assertThat(partitions(restarted)).hasSize(1);
+        Assertions.assertThat(personRepository.count()).isEqualTo(FILE_COUNT * 103L);
+    }
+
+    private JobParameters jobParameters() {
+        return new JobParametersBuilder()
+                .addString("input_files", inputDirectory.toUri() + "person-*.csv")
+                .addLong("time", System.nanoTime())
+                .toJobParameters();
+    }
+
+    private List<StepExecution> partitions(JobExecution jobExecution) {
+        return jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().startsWith("multiFileSavePersonJob_savePersonStep:"))
+                .collect(Collectors.toList());
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
@@ -13,10 +14,13 @@ import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.test.JobLauncherTestUtils;
 import org.springframework.batch.test.context.SpringBatchTest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.sql.DataSource;
+
 @RunWith(SpringRunner.class)
 @ContextConfiguration(classes = { SavePersonConfiguration.class, TestConfiguration.class })
 // Junit5에서 @Autowired사용하기 위해서 필수 설정
@@ -31,6 +35,9 @@ class SavePersonConfigurationTest {
     @Autowired
     private PersonRepository personRepository;
 
+    @Autowired
+    private DataSource dataSource;
+
 //    @AfterEach
 //    public void tearDown() throws Exception {
 //        // 이걸 하지 않으면 not allow의 person Repository의 데이터가 저장된상태로 allow method로 넘어가게 된다는데, 우린 안해도 된다? junit 5라 그런것인가 싶다.
@@ -77,6 +84,47 @@ class SavePersonConfigurationTest {
         System.out.println("하이:" + personRepository.count());
     }
 
+    @Test
+    public void test_not_allow_duplicate_with_bloom_filter() throws Exception {
+
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("allow_duplicate", "false")
+                .addString("dedup", "bloom")
+                .toJobParameters();
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        // Bloom filter를 앞에 두어도 결과는 같다.
+        Assertions.assertThat(
+                jobExecution.getStepExecutions()
+                        .stream()
+                        .mapToInt(StepExecution::getWriteCount)
+                        .sum())
+                .isEqualTo(10);
+    }
+
+    @Test
+    public void test_not_allow_duplicate_in_db() throws Exception {
+
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("allow_duplicate", "false")
+                .addString("dedup", "db")
+                .toJobParameters();
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        // processor는 중복을 거르지 않고, writer가 db에서 중복 90건을 건너뛴다.
+        // 마지막 chunk(101~103)는 이름이 없는 3건뿐이라 skipLimit(2)를 넘어서 step이 실패한다. 앞의 10개 chunk는 commit 된다.
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+        StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+        Assertions.assertThat(stepExecution.getSkipCount()).isEqualTo(2);
+        Assertions.assertThat(stepExecution.getWriteCount()).isEqualTo(100);
+        Assertions.assertThat(stepExecution.getExecutionContext().getLong(PersonUpsertItemWriter.DUPLICATE_COUNT)).isEqualTo(90);
+        Assertions.assertThat(new JdbcTemplate(dataSource).queryForObject(
+                "select count(*) from person where name_key is not null", Long.class))
+                .isEqualTo(10);
+    }
+
     @Test
     public void test_allow_duplicate() throws Exception {
 
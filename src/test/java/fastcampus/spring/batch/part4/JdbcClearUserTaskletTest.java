@@ -0,0 +1,103 @@
+package fastcampus.spring.batch.part4;
+
+import fastcampus.spring.batch.TestConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+
+@Slf4j
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+class JdbcClearUserTaskletTest {
+
+    private static final int SEED_SIZE = 40_000;
+    private static final int CHUNK_SIZE = 1_000;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        run(new JdbcClearUserTasklet(dataSource, false, CHUNK_SIZE));
+    }
+
+    @Test
+    public void test_truncate() throws Exception {
+        seed();
+
+        StepContribution contribution = run(new JdbcClearUserTasklet(dataSource, true, CHUNK_SIZE));
+
+        assertEmpty();
+        Assertions.assertThat(contribution.getWriteCount()).isEqualTo(SEED_SIZE * 2);     // user + orders
+    }
+
+    @Test
+    public void test_chunked_delete() throws Exception {
+        seed();
+
+        StepContribution contribution = run(new JdbcClearUserTasklet(dataSource, false, CHUNK_SIZE));
+
+        assertEmpty();
+        Assertions.assertThat(contribution.getWriteCount()).isEqualTo(SEED_SIZE * 2);
+    }
+
+    @Test
+    public void test_compare_with_delete_all() throws Exception {
+        seed();
+        long deleteAll = elapsed(new ClearUserStep(userRepository));
+
+        seed();
+        long chunkedDelete = elapsed(new JdbcClearUserTasklet(dataSource, false, CHUNK_SIZE));
+
+        seed();
+        long truncate = elapsed(new JdbcClearUserTasklet(dataSource, true, CHUNK_SIZE));
+
+        log.info("user {}명 삭제 - deleteAll : {}ms, chunk delete : {}ms, truncate : {}ms",
+                SEED_SIZE, deleteAll, chunkedDelete, truncate);
+
+        assertEmpty();
+    }
+
+    private void seed() throws Exception {
+        run(new BulkSaveUserTasklet(dataSource, SEED_SIZE, UserSeedDistribution.parse(null), CHUNK_SIZE));
+    }
+
+    private long elapsed(Tasklet tasklet) throws Exception {
+        long start = System.nanoTime();
+        run(tasklet);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // TaskletStep처럼 FINISHED가 될때까지 반복 실행한다.
+    private StepContribution run(Tasklet tasklet) throws Exception {
+        StepContribution contribution = new StepContribution(new StepExecution("clearUserStep", new JobExecution(1L)));
+        while (tasklet.execute(contribution, null) == RepeatStatus.CONTINUABLE) {
+        }
+        return contribution;
+    }
+
+    private void assertEmpty() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Assertions.assertThat(jdbcTemplate.queryForObject("select count(*) from user", Long.class)).isZero();
+        Assertions.assertThat(jdbcTemplate.queryForObject("select count(*) from orders", Long.class)).isZero();
+    }
+}
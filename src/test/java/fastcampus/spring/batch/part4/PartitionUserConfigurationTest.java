@@ -6,16 +6,27 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepContribution;
 import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.batch.test.JobLauncherTestUtils;
 import org.springframework.batch.test.context.SpringBatchTest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,6 +44,9 @@ class PartitionUserConfigurationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private DataSource dataSource;
+
     @Test
     public void test() throws Exception {
 
@@ -51,4 +65,212 @@ class PartitionUserConfigurationTest {
                 .isEqualTo(400);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_sql_level_up_mode() throws Exception {
+
+        // given - levelUpMode=sql 이면 SqlLevelUpTasklet으로 등급 상향을 처리한다
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("levelUpMode", "sql")
+                .toJobParameters();
+
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        // then - entity 방식과 같은 read/write count가 남아야 한다
+        int size = userRepository.findALlByUpdatedDate(LocalDate.now()).size();
+
+        StepExecution levelUpStepExecution = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("userJob_userLevelUpStep"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+
+        Assertions.assertThat(levelUpStepExecution.getWriteCount())
+                .isEqualTo(size)
+                .isEqualTo(30_000);
+
+        Assertions.assertThat((long) levelUpStepExecution.getReadCount())
+                .isEqualTo(userRepository.count())
+                .isEqualTo(40_000L);
+
+        // total_amount를 사용하지 않으므로 다시 계산하지 않는다
+        Assertions.assertThat(jobExecution.getStepExecutions())
+                .noneMatch(x -> x.getStepName().equals("userJob_backfillTotalAmountStep"));
+
+        // 등급 상향 전 -> 후 건수는 update 전에 db에서 조회해서 센다
+        new JdbcTemplate(dataSource).update("update user set level = 'NORMAL'");
+        LevelUpTransitionCounter transitionCounter = new LevelUpTransitionCounter();
+        StepContribution contribution = new StepContribution(new StepExecution("sqlLevelUp", new JobExecution(1L)));
+        SqlLevelUpTasklet tasklet = new SqlLevelUpTasklet(dataSource, 1_000, transitionCounter);
+        while (tasklet.execute(contribution, null) == RepeatStatus.CONTINUABLE) {
+        }
+
+        Assertions.assertThat(transitionCounter.get(User.Level.NORMAL, User.Level.SILVER)).isEqualTo(10_000L);
+        Assertions.assertThat(transitionCounter.get(User.Level.NORMAL, User.Level.GOLD)).isEqualTo(10_000L);
+        Assertions.assertThat(transitionCounter.get(User.Level.NORMAL, User.Level.VIP)).isEqualTo(10_000L);
+    }
+
+    @Test
+    public void test_bulk_seed_mode() throws Exception {
+
+        // given - seedMode=bulk 이면 BulkSaveUserTasklet으로 seedSize 만큼의 유저를 seedDistribution 분포로 만든다
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("seedMode", "bulk")
+                .addLong("seedSize", 4_000L)
+                .addString("seedDistribution", "1000:2,300000:1,500000:1")
+                .toJobParameters();
+
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        // then - 1000원 구간 2,000명은 그대로, 300,000원 구간 1,000명은 GOLD, 500,000원 구간 1,000명은 VIP
+        StepExecution saveUserStepExecution = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("userJob_saveUserStep"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+
+        Assertions.assertThat((long) saveUserStepExecution.getWriteCount())
+                .isEqualTo(userRepository.count())
+                .isEqualTo(4_000L);
+
+        Assertions.assertThat(userRepository.findALlByUpdatedDate(LocalDate.now()).size())
+                .isEqualTo(2_000);
+    }
+
+    @Test
+    public void test_level_up_count_query() throws Exception {
+
+        jobLauncherTestUtils.launchJob();
+
+        // LevelUpJobExecutionListener는 User를 조회하지 않고 count 쿼리로 결과를 출력한다
+        Assertions.assertThat(userRepository.countByUpdatedDate(LocalDate.now()))
+                .isEqualTo(userRepository.findALlByUpdatedDate(LocalDate.now()).size())
+                .isEqualTo(30_000L);
+
+        Map<String, Long> levelCounts = userRepository.countLevelByUpdatedDate(LocalDate.now()).stream()
+                .collect(Collectors.toMap(x -> x[0].toString(), x -> ((Number) x[1]).longValue()));
+
+        Assertions.assertThat(levelCounts)
+                .hasSize(3)
+                .containsEntry("SILVER", 10_000L)
+                .containsEntry("GOLD", 10_000L)
+                .containsEntry("VIP", 10_000L);
+    }
+
+    @Test
+    public void test_total_amount_level_up_mode() throws Exception {
+
+        // given - levelUpMode=total 이면 orders 없이 user.total_amount만 읽어서 등급 상향한다
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("levelUpMode", "total")
+                .toJobParameters();
+
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        // then
+        StepExecution levelUpStepExecution = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("userJob_userLevelUpStep"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+
+        Assertions.assertThat(levelUpStepExecution.getWriteCount())
+                .isEqualTo(userRepository.findALlByUpdatedDate(LocalDate.now()).size())
+                .isEqualTo(30_000);
+
+        // 주문을 저장할 때 total_amount를 같이 저장했으므로 다시 계산하지 않는다
+        Assertions.assertThat(jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("userJob_backfillTotalAmountStep"))
+                .mapToInt(StepExecution::getWriteCount)
+                .sum())
+                .isEqualTo(0);
+
+        // total_amount가 없는 유저만 orders와 같은 값으로 채운다
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("update user set total_amount = null, order_count = null where mod(id, 2) = 1");
+
+        StepContribution contribution = new StepContribution(new StepExecution("backfill", new JobExecution(1L)));
+        UserTotalAmountBackfillTasklet tasklet = new UserTotalAmountBackfillTasklet(dataSource, 1_000);
+        while (tasklet.execute(contribution, null) == RepeatStatus.CONTINUABLE) {
+        }
+
+        Assertions.assertThat(contribution.getWriteCount()).isEqualTo(20_000);
+        Assertions.assertThat(jdbcTemplate.queryForObject("select sum(total_amount) from user", Long.class))
+                .isEqualTo(jdbcTemplate.queryForObject("select sum(amount) from orders", Long.class));
+        Assertions.assertThat(jdbcTemplate.queryForObject("select sum(order_count) from user", Long.class))
+                .isEqualTo(40_000L);
+    }
+
+    @Test
+    public void test_order_statistics_cursor_mode() throws Exception {
+
+        // given - date가 있으면 주문 통계 step을 실행한다. statisticsMode=cursor 이면 orders를 한번만 읽는다.
+        JobExecution paging = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("date", "2020-11")
+                .toJobParameters());
+        byte[] pagingFile = Files.readAllBytes(Paths.get("output/2020년_11월_일별_주문_금액.csv"));
+
+        // when
+        JobExecution cursor = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("date", "2020-11")
+                .addString("statisticsMode", "cursor")
+                .toJobParameters());
+        byte[] cursorFile = Files.readAllBytes(Paths.get("output/2020년_11월_일별_주문_금액.csv"));
+
+        // then - 같은 파일을 만든다
+        Assertions.assertThat(paging.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(cursor.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(new String(cursorFile, "UTF-8"))
+                .isEqualTo(new String(pagingFile, "UTF-8"))
+                .contains("10000000,2020-11-01")
+                .contains("5000000000,2020-11-04");
+    }
+
+    @Test
+    public void test_projection_level_up_mode() throws Exception {
+
+        // given - levelUpMode=projection 이면 (id, level, 주문 금액 합계)만 읽어서 등급 상향한다
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("levelUpMode", "projection")
+                .toJobParameters();
+
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        // then - entity 방식과 같은 read/write/filter count
+        StepExecution levelUpStepExecution = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("userJob_userLevelUpStep"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+
+        Assertions.assertThat(levelUpStepExecution.getReadCount()).isEqualTo(40_000);
+        Assertions.assertThat(levelUpStepExecution.getFilterCount()).isEqualTo(10_000);
+        Assertions.assertThat(levelUpStepExecution.getWriteCount())
+                .isEqualTo(userRepository.findALlByUpdatedDate(LocalDate.now()).size())
+                .isEqualTo(30_000);
+    }
+
+    @Test
+    public void test_prefilter_level_up_mode() throws Exception {
+
+        // given - levelUpMode=prefilter 이면 등급 상향 대상만 query에서 골라 읽는다
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("levelUpMode", "prefilter")
+                .toJobParameters();
+
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        // then - 대상이 아닌 10,000명은 읽지 않는다
+        StepExecution levelUpStepExecution = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("userJob_userLevelUpStep"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+
+        Assertions.assertThat(levelUpStepExecution.getReadCount()).isEqualTo(30_000);
+        Assertions.assertThat(levelUpStepExecution.getFilterCount()).isZero();
+        Assertions.assertThat(levelUpStepExecution.getWriteCount())
+                .isEqualTo(userRepository.findALlByUpdatedDate(LocalDate.now()).size())
+                .isEqualTo(30_000);
+    }
+
+}
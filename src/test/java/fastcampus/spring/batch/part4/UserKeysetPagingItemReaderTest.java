@@ -0,0 +1,164 @@
+package fastcampus.spring.batch.part4;
+
+import fastcampus.spring.batch.TestConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.database.JpaPagingItemReader;
+import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Slf4j
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+class UserKeysetPagingItemReaderTest {
+
+    private static final int USER_SIZE = 20_000;
+    private static final int PAGE_SIZE = 1_000;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // entity를 거치지 않고 user 데이터만 빠르게 넣는다.
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 0; i < USER_SIZE; i++) {
+            users.add(new Object[]{"test username" + i});
+        }
+        jdbcTemplate.batchUpdate("insert into user (username, level) values (?, 'NORMAL')", users);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from user");
+    }
+
+    @Test
+    public void test_page_cost_offset_vs_keyset() throws Exception {
+        JpaPagingItemReader<User> offsetReader = new JpaPagingItemReaderBuilder<User>()
+                .queryString("select u from User u order by u.id")
+                .entityManagerFactory(entityManagerFactory)
+                .pageSize(PAGE_SIZE)
+                .name("offsetReader")
+                .build();
+        offsetReader.setTransacted(false);
+
+        UserKeysetPagingItemReader keysetReader = new UserKeysetPagingItemReader(entityManagerFactory, PAGE_SIZE, null, null);
+        keysetReader.setName("keysetReader");
+
+        List<Long> offsetPageMillis = readPageMillis(offsetReader);
+        List<Long> keysetPageMillis = readPageMillis(keysetReader);
+
+        // 페이지 번호에 따른 페이지당 처리시간, 시간은 환경에 따라 다르므로 로그로만 남긴다.
+        log.info("offset page millis : {}", offsetPageMillis);
+        log.info("keyset page millis : {}", keysetPageMillis);
+
+        Assertions.assertThat(keysetPageMillis).hasSize(USER_SIZE / PAGE_SIZE);
+        Assertions.assertThat(offsetPageMillis).hasSameSizeAs(keysetPageMillis);
+
+        // 페이지당 비용은 db가 읽은 row 수로 확인한다. (h2 explain analyze의 scanCount)
+        List<Long> ids = jdbcTemplate.queryForList("select id from user order by id", Long.class);
+        long lastPageOffset = USER_SIZE - PAGE_SIZE;
+
+        long offsetFirstPage = scanCount("select * from user order by id limit " + PAGE_SIZE + " offset 0");
+        long offsetLastPage = scanCount("select * from user order by id limit " + PAGE_SIZE + " offset " + lastPageOffset);
+        long keysetFirstPage = scanCount("select * from user where id > 0 order by id limit " + PAGE_SIZE);
+        long keysetLastPage = scanCount("select * from user where id > " + ids.get((int) lastPageOffset - 1) + " order by id limit " + PAGE_SIZE);
+
+        log.info("scanCount - offset : {} -> {}, keyset : {} -> {}", offsetFirstPage, offsetLastPage, keysetFirstPage, keysetLastPage);
+
+        // offset은 마지막 페이지에서 앞의 row를 모두 건너뛰며 읽고, keyset은 어느 페이지든 한 페이지 만큼만 읽는다.
+        Assertions.assertThat(offsetLastPage).isGreaterThanOrEqualTo(lastPageOffset);
+        Assertions.assertThat(keysetLastPage).isLessThanOrEqualTo(keysetFirstPage + 1).isLessThanOrEqualTo(PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void test_restart_from_last_id() throws Exception {
+        List<Long> ids = jdbcTemplate.queryForList("select id from user order by id", Long.class);
+        ExecutionContext executionContext = new ExecutionContext();
+
+        // 1,500건 읽고 commit(update) 된 상태에서 실패했다고 가정
+        UserKeysetPagingItemReader reader = new UserKeysetPagingItemReader(entityManagerFactory, PAGE_SIZE, null, null);
+        reader.setName("keysetReader");
+        reader.open(executionContext);
+        for (int i = 0; i < 1_500; i++) {
+            reader.read();
+        }
+        reader.update(executionContext);
+        reader.close();
+
+        // 재시작 시 1,501번째 user부터 읽는다
+        UserKeysetPagingItemReader restartedReader = new UserKeysetPagingItemReader(entityManagerFactory, PAGE_SIZE, null, null);
+        restartedReader.setName("keysetReader");
+        restartedReader.open(executionContext);
+
+        List<Long> restartedIds = new ArrayList<>();
+        User user;
+        while ((user = restartedReader.read()) != null) {
+            restartedIds.add(user.getId());
+        }
+        restartedReader.close();
+
+        Assertions.assertThat(restartedIds).isEqualTo(ids.subList(1_500, ids.size()));
+    }
+
+    // explain analyze 결과에 있는 scanCount의 합
+    private long scanCount(String sql) {
+        String plan = String.join("\n", jdbcTemplate.queryForList("explain analyze " + sql, String.class));
+        Matcher matcher = Pattern.compile("scanCount: (\\d+)").matcher(plan);
+
+        long scanCount = 0;
+        while (matcher.find()) {
+            scanCount += Long.parseLong(matcher.group(1));
+        }
+        Assertions.assertThat(scanCount).as(plan).isPositive();
+        return scanCount;
+    }
+
+    private List<Long> readPageMillis(ItemStreamReader<User> reader) throws Exception {
+        List<Long> pageNanos = new ArrayList<>();
+        reader.open(new ExecutionContext());
+
+        int count = 0;
+        long start = System.nanoTime();
+        while (reader.read() != null) {
+            if (++count % PAGE_SIZE == 0) {
+                pageNanos.add(System.nanoTime() - start);
+                start = System.nanoTime();
+            }
+        }
+        reader.close();
+
+        return pageNanos.stream()
+                .map(TimeUnit.NANOSECONDS::toMillis)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,104 @@
+package fastcampus.spring.batch.part4;
+
+import fastcampus.spring.batch.TestConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.util.function.Predicate;
+
+@Slf4j
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+class UserLevelCandidateItemReaderTest {
+
+    private static final int SEED_SIZE = 40_000;
+    private static final int CHUNK_SIZE = 1_000;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        run(new JdbcClearUserTasklet(dataSource, false, CHUNK_SIZE));
+        run(new BulkSaveUserTasklet(dataSource, SEED_SIZE, UserSeedDistribution.parse(null), CHUNK_SIZE));
+    }
+
+    @Test
+    public void test_allocation_per_item() throws Exception {
+
+        // 한번씩 읽어서 class loading, jit 등 처음 한번만 생기는 할당을 제외한다.
+        readAll(entityReader(), User::availableLevelUp);
+        readAll(candidateReader(), x -> x.levelUp() != null);
+
+        long[] entity = readAll(entityReader(), User::availableLevelUp);
+        long[] candidate = readAll(candidateReader(), x -> x.levelUp() != null);
+
+        log.info("User entity : {} bytes/item, UserLevelCandidate : {} bytes/item",
+                entity[1] / SEED_SIZE, candidate[1] / SEED_SIZE);
+
+        // 같은 유저가 등급 상향 대상이 된다.
+        Assertions.assertThat(entity[0]).isEqualTo(candidate[0]).isEqualTo(30_000L);
+        Assertions.assertThat(candidate[1]).isLessThan(entity[1]);
+    }
+
+    private UserKeysetPagingItemReader entityReader() {
+        UserKeysetPagingItemReader itemReader = new UserKeysetPagingItemReader(entityManagerFactory, CHUNK_SIZE, null, null);
+        itemReader.setName("userItemReader");
+        return itemReader;
+    }
+
+    private UserLevelCandidateItemReader candidateReader() {
+        UserLevelCandidateItemReader itemReader = new UserLevelCandidateItemReader(dataSource, CHUNK_SIZE, null, null);
+        itemReader.setName("userLevelCandidateItemReader");
+        return itemReader;
+    }
+
+    /**
+     * @return [등급 상향 대상 수, 현재 쓰레드가 할당한 bytes]
+     */
+    private <T> long[] readAll(ItemStreamReader<T> reader, Predicate<T> levelUp) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        long count = 0;
+        reader.open(new ExecutionContext());
+        T item;
+        while ((item = reader.read()) != null) {
+            if (levelUp.test(item)) {
+                count++;
+            }
+        }
+        reader.close();
+
+        return new long[]{count, threadMXBean.getThreadAllocatedBytes(threadId) - before};
+    }
+
+    private void run(Tasklet tasklet) throws Exception {
+        StepContribution contribution = new StepContribution(new StepExecution("setUp", new JobExecution(1L)));
+        while (tasklet.execute(contribution, null) == RepeatStatus.CONTINUABLE) {
+        }
+    }
+}
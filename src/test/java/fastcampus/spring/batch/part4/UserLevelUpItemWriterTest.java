@@ -0,0 +1,175 @@
+package fastcampus.spring.batch.part4;
+
+import fastcampus.spring.batch.TestConfiguration;
+import fastcampus.spring.batch.part5.Orders;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+class UserLevelUpItemWriterTest {
+
+    private static final int CHUNK_SIZE = 1_000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void test_statement_count_per_chunk() throws Exception {
+
+        // given - 등급 상향 대상인 user 1,000명
+        saveUsers();
+
+        // when - 기존 방식 : user 마다 levelUp() + userRepository.save()
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        userRepository.findAll().forEach(user -> {
+            user.levelUp();
+            userRepository.save(user);
+        });
+        long jpaStatementCount = statistics.getPrepareStatementCount();
+
+        // when - UserLevelUpItemWriter : chunk 당 jdbc batch update 한번
+        AtomicInteger executeCount = new AtomicInteger();
+        new UserLevelUpItemWriter(countingDataSource(executeCount)).write(userRepository.findAll());
+
+        log.info("1,000건 chunk 당 statement 수 - save() : {}, jdbc batch : {}", jpaStatementCount, executeCount.get());
+
+        // then - save()는 user 마다 merge(select + update), jdbc batch는 한번의 executeBatch
+        Assertions.assertThat(jpaStatementCount).isGreaterThanOrEqualTo(CHUNK_SIZE);
+        Assertions.assertThat(executeCount.get()).isEqualTo(1);
+        Assertions.assertThat(userRepository.findALlByUpdatedDate(LocalDate.now())).hasSize(CHUNK_SIZE);
+    }
+
+    @Test
+    public void test_transition_counted_after_commit() throws Exception {
+
+        // given - 등급 상향 대상인 user 1,000명 (NORMAL -> SILVER)
+        saveUsers();
+        LevelUpTransitionCounter transitionCounter = new LevelUpTransitionCounter();
+        UserLevelUpItemWriter itemWriter = new UserLevelUpItemWriter(dataSource, transitionCounter);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // when - rollback 된 chunk
+        transactionTemplate.execute(status -> {
+            write(itemWriter, userRepository.findAll());
+            status.setRollbackOnly();
+            return null;
+        });
+
+        // then - 다시 쓸 chunk 이므로 세지 않는다.
+        Assertions.assertThat(transitionCounter.get(User.Level.NORMAL, User.Level.SILVER)).isZero();
+
+        // when - commit 된 chunk
+        transactionTemplate.execute(status -> {
+            write(itemWriter, userRepository.findAll());
+            return null;
+        });
+
+        // then
+        Assertions.assertThat(transitionCounter.get(User.Level.NORMAL, User.Level.SILVER)).isEqualTo(CHUNK_SIZE);
+    }
+
+    private void write(UserLevelUpItemWriter itemWriter, List<User> users) {
+        try {
+            itemWriter.write(users);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void saveUsers() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            users.add(User.builder()
+                    .orders(Collections.singletonList(Orders.builder()
+                            .amount(200_000)
+                            .createdDate(LocalDate.of(2020, 11, 2))
+                            .itemName("item" + i)
+                            .build()))
+                    .username("test username" + i)
+                    .build());
+        }
+        userRepository.saveAll(users);
+    }
+
+    /**
+     * PreparedStatement의 execute/executeUpdate/executeBatch 호출(db round trip) 횟수를 센다.
+     */
+    private DataSource countingDataSource(AtomicInteger executeCount) {
+        return proxy(DataSource.class, dataSource, (method, result) -> {
+            if (result instanceof Connection) {
+                return proxy(Connection.class, result, (conMethod, conResult) -> {
+                    if (conResult instanceof PreparedStatement) {
+                        return proxy(PreparedStatement.class, conResult, (psMethod, psResult) -> {
+                            if (psMethod.getName().startsWith("execute")) {
+                                executeCount.incrementAndGet();
+                            }
+                            return psResult;
+                        });
+                    }
+                    return conResult;
+                });
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, Object target, ResultDecorator decorator) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            try {
+                return decorator.decorate(method, method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+
+    private interface ResultDecorator {
+        Object decorate(Method method, Object result);
+    }
+}
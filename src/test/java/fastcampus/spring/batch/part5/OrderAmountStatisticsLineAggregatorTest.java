@@ -0,0 +1,90 @@
+package fastcampus.spring.batch.part5;
+
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+
+import java.time.LocalDate;
+
+/**
+ * BeanWrapperFieldExtractor + DelimitedLineAggregator와 OrderAmountStatisticsLineAggregator 비교
+ * (jmh 대신 warm-up 후 같은 반복 횟수의 시간을 기록한다)
+ */
+@Slf4j
+class OrderAmountStatisticsLineAggregatorTest {
+
+    private static final int ROWS = 2_000_000;
+    private static final LocalDate START = LocalDate.of(1900, 1, 1);
+
+    @Test
+    public void test_same_format_as_delimited_line_aggregator() {
+        DelimitedLineAggregator<OrderStatistics> delimited = delimitedLineAggregator();
+        OrderAmountStatisticsLineAggregator typed = new OrderAmountStatisticsLineAggregator();
+
+        // 1900 ~ 2100년의 모든 날짜 (윤년, 1900/2000년 포함)
+        for (LocalDate date = START; date.getYear() <= 2100; date = date.plusDays(1)) {
+            long amount = date.toEpochDay() * 1_000_003L;
+
+            Assertions.assertThat(typed.aggregate(new OrderAmountStatistics(amount, date)))
+                    .isEqualTo(delimited.aggregate(OrderStatistics.builder()
+                            .amount(String.valueOf(amount))
+                            .date(date)
+                            .build()));
+        }
+    }
+
+    @Test
+    public void test_compare_time() {
+        OrderStatistics[] statistics = new OrderStatistics[1_000];
+        OrderAmountStatistics[] amountStatistics = new OrderAmountStatistics[1_000];
+        for (int i = 0; i < statistics.length; i++) {
+            LocalDate date = START.plusDays(i);
+            long amount = 5_000_000_000L + i;
+            statistics[i] = OrderStatistics.builder().amount(String.valueOf(amount)).date(date).build();
+            amountStatistics[i] = new OrderAmountStatistics(amount, date);
+        }
+
+        DelimitedLineAggregator<OrderStatistics> delimited = delimitedLineAggregator();
+        OrderAmountStatisticsLineAggregator typed = new OrderAmountStatisticsLineAggregator();
+
+        // warm-up
+        long blackhole = 0;
+        for (int i = 0; i < ROWS / 4; i++) {
+            blackhole += delimited.aggregate(statistics[i % statistics.length]).length();
+            blackhole += typed.aggregate(amountStatistics[i % amountStatistics.length]).length();
+        }
+
+        long delimitedLength = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++) {
+            delimitedLength += delimited.aggregate(statistics[i % statistics.length]).length();
+        }
+        long delimitedNanos = System.nanoTime() - start;
+
+        long typedLength = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++) {
+            typedLength += typed.aggregate(amountStatistics[i % amountStatistics.length]).length();
+        }
+        long typedNanos = System.nanoTime() - start;
+
+        log.info("{}건 - BeanWrapper + Delimited : {}ms, OrderAmountStatisticsLineAggregator : {}ms ({})",
+                ROWS, delimitedNanos / 1_000_000, typedNanos / 1_000_000, blackhole);
+
+        // 시간은 실행 환경마다 달라서 기록만 하고, 같은 내용을 만들었는지만 검증한다.
+        Assertions.assertThat(typedLength).isEqualTo(delimitedLength);
+    }
+
+    private DelimitedLineAggregator<OrderStatistics> delimitedLineAggregator() {
+        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(new String[]{"amount", "date"});
+
+        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
+        lineAggregator.setDelimiter(",");
+        lineAggregator.setFieldExtractor(fieldExtractor);
+
+        return lineAggregator;
+    }
+}
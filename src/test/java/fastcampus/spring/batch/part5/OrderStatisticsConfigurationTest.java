@@ -0,0 +1,294 @@
+package fastcampus.spring.batch.part5;
+
+import fastcampus.spring.batch.TestConfiguration;
+import fastcampus.spring.batch.part4.BulkSaveUserTasklet;
+import fastcampus.spring.batch.part4.JdbcClearUserTasklet;
+import fastcampus.spring.batch.part4.UserSeedDistribution;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {OrderStatisticsConfiguration.class, TestConfiguration.class})
+class OrderStatisticsConfigurationTest {
+
+    private static final String DATE = "2020-11";
+    private static final String OUTPUT = "output/2020년_11월_일별_주문_금액.csv";
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * 2020-11-01 ~ 2020-11-30, 하루마다 금액이 다른 주문 30,000건
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        String distribution = IntStream.rangeClosed(1, 30)
+                .mapToObj(day -> day * 1_000 + ":1")
+                .collect(Collectors.joining(","));
+
+        run(new JdbcClearUserTasklet(dataSource, false, 1_000));
+        run(new BulkSaveUserTasklet(dataSource, 30_000, UserSeedDistribution.parse(distribution), 1_000));
+
+        // orders를 다시 만들었으므로 요약도 비운다.
+        new JdbcTemplate(dataSource).update("delete from order_daily_statistics");
+        new JdbcTemplate(dataSource).update("delete from order_statistics_processed_order");
+    }
+
+    @Test
+    public void test_incremental_mode_reads_only_new_orders() throws Exception {
+
+        Assertions.assertThat(launchIncremental()).isEqualTo(30_000);
+        Assertions.assertThat(Files.readAllBytes(Paths.get(OUTPUT))).isEqualTo(launch(null));
+
+        // 다음날 새로 들어온 주문 10건만 요약에 더한다.
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        for (int i = 0; i < 10; i++) {
+            jdbcTemplate.update("insert into orders (item_name, amount, created_date) values (?, ?, ?)",
+                    "new_item", 500, java.sql.Date.valueOf("2020-11-15"));
+        }
+
+        Assertions.assertThat(launchIncremental()).isEqualTo(10);
+        byte[] incremental = Files.readAllBytes(Paths.get(OUTPUT));
+        Assertions.assertThat(incremental).isEqualTo(launch(null));
+        Assertions.assertThat(new String(incremental, "UTF-8")).contains("15005000,2020-11-15");
+
+        // 새 주문이 없으면 아무것도 더하지 않는다.
+        Assertions.assertThat(launchIncremental()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_incremental_mode_adds_late_committed_order() throws Exception {
+
+        Assertions.assertThat(launchIncremental()).isEqualTo(30_000);
+
+        // 먼저 id를 받은 주문이 늦게 commit 되는 경우 : id가 더 큰 주문만 보이는 상태로 실행한다.
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("insert into orders (item_name, amount, created_date) values (?, ?, ?)",
+                "late_item", 700, java.sql.Date.valueOf("2020-11-20"));
+        long lateId = jdbcTemplate.queryForObject("select max(id) from orders", Long.class);
+        jdbcTemplate.update("insert into orders (item_name, amount, created_date) values (?, ?, ?)",
+                "new_item", 500, java.sql.Date.valueOf("2020-11-15"));
+        jdbcTemplate.update("delete from orders where id = ?", lateId);
+
+        Assertions.assertThat(launchIncremental()).isEqualTo(1);
+
+        // watermark 아래 id로 commit 되어도 다음 실행에서 더한다. 이미 더한 주문은 다시 더하지 않는다.
+        jdbcTemplate.update("insert into orders (id, item_name, amount, created_date) values (?, ?, ?, ?)",
+                lateId, "late_item", 700, java.sql.Date.valueOf("2020-11-20"));
+
+        Assertions.assertThat(launchIncremental()).isEqualTo(1);
+        byte[] incremental = Files.readAllBytes(Paths.get(OUTPUT));
+        Assertions.assertThat(incremental).isEqualTo(launch(null));
+        Assertions.assertThat(new String(incremental, "UTF-8"))
+                .contains("15000500,2020-11-15")
+                .contains("20000700,2020-11-20");
+
+        Assertions.assertThat(launchIncremental()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_cursor_mode_same_as_paging() throws Exception {
+
+        byte[] paging = launch(null);
+        byte[] cursor = launch("cursor");
+
+        Assertions.assertThat(new String(cursor, "UTF-8"))
+                .isEqualTo(new String(paging, "UTF-8"))
+                .startsWith("total_amount, date")
+                .contains("1000000,2020-11-01")
+                .contains("30000000,2020-11-30");
+    }
+
+    @Test
+    public void test_typed_mode_same_as_paging() throws Exception {
+
+        byte[] paging = launch(null);
+        byte[] typed = launch("typed");
+
+        Assertions.assertThat(typed).isEqualTo(paging);
+    }
+
+    @Test
+    public void test_partition_mode_same_as_paging() throws Exception {
+
+        byte[] paging = launch(null);
+
+        for (String slice : new String[]{"day", "week"}) {
+            JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                    .addString("date", DATE)
+                    .addString("statisticsMode", "partition")
+                    .addString("slice", slice)
+                    .addLong("time", System.nanoTime())
+                    .toJobParameters());
+
+            Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+            // partition 마다 일별 금액을 쓴다. day 이면 30개, week 이면 5개 partition
+            List<StepExecution> slices = jobExecution.getStepExecutions().stream()
+                    .filter(x -> x.getStepName().contains("_orderStatisticsSliceStep:"))
+                    .collect(Collectors.toList());
+            Assertions.assertThat(slices).hasSize("day".equals(slice) ? 30 : 5);
+            Assertions.assertThat(slices.stream().mapToInt(StepExecution::getWriteCount).sum()).isEqualTo(30);
+
+            Assertions.assertThat(Files.readAllBytes(Paths.get(OUTPUT))).isEqualTo(paging);
+            Assertions.assertThat(Paths.get("output/orderStatisticsJob_2020-11")).doesNotExist();
+        }
+    }
+
+    @Test
+    public void test_partition_mode_with_period_merges_only_own_slices() throws Exception {
+
+        List<String> paging = Arrays.asList(new String(launch(null), "UTF-8").split(System.lineSeparator()));
+
+        // 다른 slice로 실패한 실행이 남긴 파일
+        Path leftover = Paths.get("output/orderStatisticsJob_2020-11-01_2020-11-14/2020-11-02.csv");
+        Files.createDirectories(leftover.getParent());
+        Files.write(leftover, ("999,2020-11-02" + System.lineSeparator()).getBytes("UTF-8"));
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("startDate", "2020-11-01")
+                .addString("endDate", "2020-11-14")
+                .addString("statisticsMode", "partition")
+                .addString("slice", "week")
+                .addLong("time", System.nanoTime())
+                .toJobParameters());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        // 헤더 + 14일, partition이 쓴 파일만 합친다
+        Assertions.assertThat(Files.readAllLines(Paths.get("output/2020-11-01_2020-11-14_일별_주문_금액.csv")))
+                .isEqualTo(paging.subList(0, 15))
+                .doesNotContain("999,2020-11-02");
+
+        Assertions.assertThat(leftover).exists();
+        Files.delete(leftover);
+        Files.delete(leftover.getParent());
+    }
+
+    @Test
+    public void test_gzip_compress_same_as_paging() throws Exception {
+
+        byte[] paging = launch(null);
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("date", DATE)
+                .addString("compress", "gzip")
+                .addLong("time", System.nanoTime())
+                .toJobParameters());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(Paths.get(OUTPUT + ".gz")))) {
+            Assertions.assertThat(StreamUtils.copyToByteArray(in)).isEqualTo(paging);
+        }
+    }
+
+    @Test
+    public void test_multi_mode() throws Exception {
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("date", DATE)
+                .addString("statisticsMode", "multi")
+                .addLong("time", System.nanoTime())
+                .toJobParameters());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        // orders는 한번만 읽는다
+        Assertions.assertThat(jobExecution.getStepExecutions().iterator().next().getReadCount()).isEqualTo(30_000);
+
+        List<String> daily = Files.readAllLines(Paths.get("output/2020-11-01_2020-11-30_일별_주문_통계.csv"));
+        Assertions.assertThat(daily).hasSize(31)
+                .contains("2020-11-01,1000,1000000,1000,1000,1000.00")
+                .contains("2020-11-30,1000,30000000,30000,30000,30000.00");
+
+        // 2020-11-01(일)은 2020-W44, 2020-11-30(월)은 2020-W49
+        List<String> weekly = Files.readAllLines(Paths.get("output/2020-11-01_2020-11-30_주별_주문_통계.csv"));
+        Assertions.assertThat(weekly).hasSize(7)
+                .contains("2020-W44,1000,1000000,1000,1000,1000.00");
+
+        // 1,000 ~ 30,000원 주문이 각 1,000건
+        List<String> monthly = Files.readAllLines(Paths.get("output/2020-11-01_2020-11-30_월별_주문_통계.csv"));
+        Assertions.assertThat(monthly).containsExactly(
+                "month, order_count, total_amount, min_amount, max_amount, avg_amount",
+                "2020-11,30000,465000000,1000,30000,15500.00");
+
+        // 상품명은 유저마다 다르므로 금액이 가장 큰 30,000원 주문 상품들이 상위에 온다
+        List<String> topItems = Files.readAllLines(Paths.get("output/2020-11-01_2020-11-30_상품별_상위_10.csv"));
+        Assertions.assertThat(topItems).hasSize(11);
+        Assertions.assertThat(topItems.get(1)).startsWith("1,item").endsWith(",1,30000");
+    }
+
+    private byte[] launch(String statisticsMode) throws Exception {
+        JobParametersBuilder jobParameters = new JobParametersBuilder()
+                .addString("date", DATE)
+                .addLong("time", System.nanoTime());
+        if (statisticsMode != null) {
+            jobParameters.addString("statisticsMode", statisticsMode);
+        }
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters.toJobParameters());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(jobExecution.getStepExecutions().iterator().next().getWriteCount()).isEqualTo(30);
+
+        return Files.readAllBytes(Paths.get(OUTPUT));
+    }
+
+    // 요약 테이블에 더한 주문 건수
+    private int launchIncremental() throws Exception {
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("date", DATE)
+                .addString("statisticsMode", "incremental")
+                .addLong("time", System.nanoTime())
+                .toJobParameters());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        return jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().endsWith("_orderDailyStatisticsStep"))
+                .findFirst()
+                .map(StepExecution::getWriteCount)
+                .orElseThrow(IllegalStateException::new);
+    }
+
+    private void run(Tasklet tasklet) throws Exception {
+        StepContribution contribution = new StepContribution(new StepExecution("setUp", new JobExecution(1L)));
+        while (tasklet.execute(contribution, null) == RepeatStatus.CONTINUABLE) {
+        }
+    }
+}
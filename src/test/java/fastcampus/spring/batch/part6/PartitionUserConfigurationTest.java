@@ -0,0 +1,101 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.TestConfiguration;
+import fastcampus.spring.batch.part4.User;
+import fastcampus.spring.batch.part4.UserRepository;
+import fastcampus.spring.batch.part4.UserSeedDistribution;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {PartitionUserConfiguration.class, TestConfiguration.class})
+class PartitionUserConfigurationTest {
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    public void test() throws Exception {
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob();
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        // 데이터 생성도 partition 마다 chunk 단위로 나눠서 실행된다.
+        List<StepExecution> saveUserStepExecutions = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().startsWith("partitionUserJob_saveUserStep:"))
+                .collect(Collectors.toList());
+
+        Assertions.assertThat(saveUserStepExecutions).hasSize(8);
+        Assertions.assertThat(saveUserStepExecutions.stream().mapToLong(StepExecution::getWriteCount).sum())
+                .isEqualTo(userRepository.count())
+                .isEqualTo(40_000L);
+
+        // SaveUserTasklet과 같은 분포 : 등급별로 10,000명씩, 30,000명이 등급 상향된다.
+        Assertions.assertThat(userRepository.findALlByUpdatedDate(LocalDate.now()).size())
+                .isEqualTo(30_000);
+    }
+
+    @Test
+    public void test_seed_item_reader_restart() throws Exception {
+
+        UserSeedDistribution distribution = UserSeedDistribution.parse("0-199999:3,200000-600000:1", 42L);
+
+        // 처음부터 10건
+        UserSeedItemReader reader = new UserSeedItemReader(distribution, 100, 110);
+        reader.setName("userSeedItemReader");
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+
+        StringBuilder expected = new StringBuilder();
+        User user;
+        int count = 0;
+        while ((user = reader.read()) != null) {
+            expected.append(describe(user));
+            if (++count == 4) {
+                reader.update(executionContext);    // 4건 커밋 후 중단되었다고 가정
+            }
+        }
+        reader.close();
+        Assertions.assertThat(count).isEqualTo(10);
+
+        // 재시작하면 5번째부터 같은 데이터를 만든다
+        UserSeedItemReader restarted = new UserSeedItemReader(distribution, 100, 110);
+        restarted.setName("userSeedItemReader");
+        restarted.open(executionContext);
+
+        StringBuilder actual = new StringBuilder();
+        while ((user = restarted.read()) != null) {
+            actual.append(describe(user));
+        }
+        restarted.close();
+
+        Assertions.assertThat(expected.toString()).endsWith(actual.toString());
+        Assertions.assertThat(actual.toString()).startsWith("test username104");
+    }
+
+    private String describe(User user) {
+        return user.getUsername() + ":" + user.getOrders().get(0).getAmount() + ",";
+    }
+}
@@ -0,0 +1,133 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.TestConfiguration;
+import fastcampus.spring.batch.part4.User;
+import fastcampus.spring.batch.part4.UserKeysetPagingItemReader;
+import fastcampus.spring.batch.part4.UserLevelUpItemWriter;
+import fastcampus.spring.batch.part4.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Slf4j
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("remote-chunking")
+@ContextConfiguration(classes = {RemoteChunkingUserConfiguration.class, TestConfiguration.class})
+class RemoteChunkingUserConfigurationTest {
+
+    private static final int CHUNK_SIZE = 1_000;
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void test() throws Exception {
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob();
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        Assertions.assertThat(userRepository.findALlByUpdatedDate(LocalDate.now()).size())
+                .isEqualTo(30_000);
+        assertLevelCounts();
+
+        StepExecution remoteChunking = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals(RemoteChunkingUserConfiguration.JOB_NAME + "_userLevelUpStep"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+
+        // 같은 40,000명을 UserConfiguration과 같은 단일 쓰레드 chunk step으로 다시 등급 상향한다.
+        new JdbcTemplate(dataSource).update("update user set level = 'NORMAL', updated_date = null");
+
+        JobExecution singleThreadExecution = jobLauncher.run(
+                jobBuilderFactory.get("singleThreadUserJob").start(singleThreadUserLevelUpStep()).build(),
+                new JobParametersBuilder().addLong("time", System.currentTimeMillis()).toJobParameters());
+
+        Assertions.assertThat(singleThreadExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertLevelCounts();
+
+        StepExecution singleThread = singleThreadExecution.getStepExecutions().iterator().next();
+
+        log.info("remote chunking : {}", throughput(remoteChunking));
+        log.info("single thread   : {}", throughput(singleThread));
+    }
+
+    private Step singleThreadUserLevelUpStep() {
+        UserKeysetPagingItemReader itemReader = new UserKeysetPagingItemReader(entityManagerFactory, CHUNK_SIZE, null, null);
+        itemReader.setName("singleThreadUserItemReader");
+
+        return stepBuilderFactory.get("singleThreadUserLevelUpStep")
+                .<User, User>chunk(CHUNK_SIZE)
+                .reader(itemReader)
+                .processor((ItemProcessor<User, User>) user -> user.availableLevelUp() ? user : null)
+                .writer(new UserLevelUpItemWriter(dataSource))
+                .build();
+    }
+
+    private void assertLevelCounts() {
+        // SaveUserTasklet의 데이터는 등급별로 10,000명씩이 된다.
+        Map<String, Long> levelCounts = new JdbcTemplate(dataSource)
+                .queryForList("select level, count(*) as cnt from user group by level").stream()
+                .collect(Collectors.toMap(x -> (String) x.get("level"), x -> ((Number) x.get("cnt")).longValue()));
+
+        Assertions.assertThat(levelCounts)
+                .containsEntry("NORMAL", 10_000L)
+                .containsEntry("SILVER", 10_000L)
+                .containsEntry("GOLD", 10_000L)
+                .containsEntry("VIP", 10_000L);
+    }
+
+    private String throughput(StepExecution stepExecution) {
+        long millis = Math.max(1, Duration.between(stepExecution.getStartTime().toInstant(),
+                stepExecution.getEndTime().toInstant()).toMillis());
+
+        return String.format("read %d, %dms, %d users/s",
+                stepExecution.getReadCount(), millis, stepExecution.getReadCount() * 1_000L / millis);
+    }
+}
@@ -0,0 +1,113 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.TestConfiguration;
+import fastcampus.spring.batch.part4.UserRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("remote-partitioning")
+@ContextConfiguration(classes = {RemotePartitionUserConfiguration.class, TestConfiguration.class})
+class RemotePartitionUserConfigurationTest {
+
+    private static final int WORKER_SIZE = 3;
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    private final List<AnnotationConfigApplicationContext> workers = new ArrayList<>();
+
+    /**
+     * worker 마다 별도의 context를 띄운다. (다른 JVM 대신)
+     * 각 worker는 자신의 JobRepository, step scope를 가지고 db만 manager와 공유한다.
+     */
+    @BeforeEach
+    public void startWorkers() {
+        for (int i = 0; i < WORKER_SIZE; i++) {
+            AnnotationConfigApplicationContext worker = new AnnotationConfigApplicationContext();
+            worker.setParent(applicationContext);
+            worker.getEnvironment().setActiveProfiles("remote-partitioning-worker");
+            worker.register(RemotePartitionWorkerConfiguration.class);
+            worker.refresh();
+            workers.add(worker);
+        }
+    }
+
+    @AfterEach
+    public void stopWorkers() {
+        workers.forEach(AnnotationConfigApplicationContext::close);
+        workers.clear();
+    }
+
+    @Test
+    public void test() throws Exception {
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob();
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        // worker들이 실행한 partition step들의 write count 합 === 등급 상향된 user 수
+        // worker가 JobRepository에 저장한 결과를 보기 위해 다시 조회한다.
+        List<StepExecution> workerStepExecutions = jobExplorer.getJobExecution(jobExecution.getId()).getStepExecutions().stream()
+                .filter(x -> x.getStepName().startsWith(RemotePartitionUserConfiguration.WORKER_STEP_NAME + ":"))
+                .collect(Collectors.toList());
+
+        Assertions.assertThat(workerStepExecutions)
+                .isNotEmpty()
+                .allMatch(x -> x.getStatus() == BatchStatus.COMPLETED);
+
+        Assertions.assertThat(workerStepExecutions.stream().mapToInt(StepExecution::getWriteCount).sum())
+                .isEqualTo(userRepository.findALlByUpdatedDate(LocalDate.now()).size())
+                .isEqualTo(30_000);
+
+        // 단일 노드 job과 같은 결과 : SaveUserTasklet의 데이터는 등급별로 10,000명씩이 된다.
+        Map<String, Long> levelCounts = new JdbcTemplate(dataSource)
+                .queryForList("select level, count(*) as cnt from user group by level").stream()
+                .collect(Collectors.toMap(x -> (String) x.get("level"), x -> ((Number) x.get("cnt")).longValue()));
+
+        Assertions.assertThat(levelCounts)
+                .containsEntry("NORMAL", 10_000L)
+                .containsEntry("SILVER", 10_000L)
+                .containsEntry("GOLD", 10_000L)
+                .containsEntry("VIP", 10_000L);
+    }
+}
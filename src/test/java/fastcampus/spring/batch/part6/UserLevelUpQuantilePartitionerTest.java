@@ -0,0 +1,147 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.TestConfiguration;
+import fastcampus.spring.batch.part4.UserConfiguration;
+import fastcampus.spring.batch.part4.UserKeysetPagingItemReader;
+import fastcampus.spring.batch.part4.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@Slf4j
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+class UserLevelUpQuantilePartitionerTest {
+
+    private static final int USER_SIZE = 10_000;
+    private static final int HEAVY_USER_SIZE = 1_000;      // 앞쪽 1,000명에게 주문이 몰려있다
+    private static final int HEAVY_ORDER_SIZE = 40;
+    private static final int GRID_SIZE = 8;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 0; i < USER_SIZE; i++) {
+            users.add(new Object[]{"test username" + i});
+        }
+        jdbcTemplate.batchUpdate("insert into user (username, level) values (?, 'NORMAL')", users);
+
+        List<Long> ids = jdbcTemplate.queryForList("select id from user order by id", Long.class);
+        List<Object[]> orders = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            int orderSize = i < HEAVY_USER_SIZE ? HEAVY_ORDER_SIZE : 1;
+            for (int j = 0; j < orderSize; j++) {
+                orders.add(new Object[]{"item" + j, 1_000, Date.valueOf(LocalDate.of(2020, 11, 1)), ids.get(i)});
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into orders (item_name, amount, created_date, user_id) values (?, ?, ?, ?)", orders);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from orders");
+        jdbcTemplate.update("delete from user");
+    }
+
+    @Test
+    public void test_order_weighted_partition_is_balanced() throws Exception {
+        Collection<ExecutionContext> rangePartitions = new UserLevelUpPartitioner(userRepository).partition(GRID_SIZE).values();
+        Collection<ExecutionContext> weightedPartitions = new UserLevelUpQuantilePartitioner(dataSource, true).partition(GRID_SIZE).values();
+
+        long rangeMaxWeight = maxWeight(rangePartitions);
+        long weightedMaxWeight = maxWeight(weightedPartitions);
+        long rangeMaxMillis = maxReadMillis(rangePartitions);
+        long weightedMaxMillis = maxReadMillis(weightedPartitions);
+
+        log.info("가장 큰 partition (user + 주문 수) - 같은 간격 : {}, 가중치 분위수 : {}", rangeMaxWeight, weightedMaxWeight);
+        log.info("가장 오래 걸린 partition millis - 같은 간격 : {}, 가중치 분위수 : {}", rangeMaxMillis, weightedMaxMillis);
+
+        // 전체 가중치를 GRID_SIZE로 나눈 값에 가까워야 한다. 같은 간격은 주문이 몰린 앞쪽 partition이 훨씬 크다.
+        long totalWeight = USER_SIZE + (long) HEAVY_USER_SIZE * HEAVY_ORDER_SIZE + (USER_SIZE - HEAVY_USER_SIZE);
+        long idealWeight = totalWeight / GRID_SIZE;
+
+        Assertions.assertThat(weightedPartitions).hasSizeLessThanOrEqualTo(GRID_SIZE);
+        Assertions.assertThat(weightedMaxWeight).isLessThan(rangeMaxWeight).isLessThanOrEqualTo(idealWeight * 3 / 2);
+        Assertions.assertThat(rangeMaxWeight).isGreaterThan(idealWeight * 3 / 2);
+        Assertions.assertThat(totalUsers(weightedPartitions)).isEqualTo(USER_SIZE);
+    }
+
+    @Test
+    public void test_quantile_partition_has_same_user_count() {
+        Collection<ExecutionContext> partitions = new UserLevelUpQuantilePartitioner(dataSource, false).partition(GRID_SIZE).values();
+
+        Assertions.assertThat(partitions).hasSize(GRID_SIZE);
+        partitions.forEach(partition -> Assertions.assertThat(userCount(partition)).isEqualTo(USER_SIZE / GRID_SIZE));
+    }
+
+    private long maxWeight(Collection<ExecutionContext> partitions) {
+        return partitions.stream()
+                .mapToLong(partition -> userCount(partition) + jdbcTemplate.queryForObject(
+                        "select count(*) from orders where user_id between ? and ?", Long.class,
+                        partition.getLong("minId"), partition.getLong("maxId")))
+                .max()
+                .orElse(0);
+    }
+
+    private long totalUsers(Collection<ExecutionContext> partitions) {
+        return partitions.stream().mapToLong(this::userCount).sum();
+    }
+
+    private long userCount(ExecutionContext partition) {
+        return jdbcTemplate.queryForObject("select count(*) from user where id between ? and ?", Long.class,
+                partition.getLong("minId"), partition.getLong("maxId"));
+    }
+
+    /**
+     * partition 별로 실제 step과 같이 User(+주문)를 읽는 시간을 재서, 가장 오래 걸린 partition의 시간을 반환한다.
+     */
+    private long maxReadMillis(Collection<ExecutionContext> partitions) throws Exception {
+        long max = 0;
+        for (ExecutionContext partition : partitions) {
+            UserKeysetPagingItemReader reader = new UserKeysetPagingItemReader(entityManagerFactory, 1_000,
+                    partition.getLong("minId"), partition.getLong("maxId"));
+            reader.setName("partitionReader");
+
+            long start = System.currentTimeMillis();
+            reader.open(new ExecutionContext());
+            while (reader.read() != null) {
+                // 읽기만 한다
+            }
+            reader.close();
+            max = Math.max(max, System.currentTimeMillis() - start);
+        }
+        return max;
+    }
+}
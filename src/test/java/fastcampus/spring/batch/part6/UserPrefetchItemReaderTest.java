@@ -0,0 +1,98 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.TestConfiguration;
+import fastcampus.spring.batch.part4.UserConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+class UserPrefetchItemReaderTest {
+
+    private static final int USER_SIZE = 30;
+    private static final int PAGE_SIZE = 10;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 0; i < USER_SIZE; i++) {
+            users.add(new Object[]{"test username" + i});
+        }
+        jdbcTemplate.batchUpdate("insert into user (username, level) values (?, 'NORMAL')", users);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from user");
+    }
+
+    @Test
+    public void test_rolled_back_chunk_released_after_reprocess() throws Exception {
+        List<Long> ids = jdbcTemplate.queryForList("select id from user order by id", Long.class);
+        StepContext stepContext = new StepContext(new StepExecution("step", new JobExecution(1L)));
+        ExecutionContext executionContext = new ExecutionContext();
+
+        UserPrefetchItemReader reader = new UserPrefetchItemReader(entityManagerFactory, PAGE_SIZE, 2);
+        reader.setName("prefetchReader");
+        reader.open(executionContext);
+
+        // 첫번째 chunk는 rollback 된다.
+        ChunkContext failed = new ChunkContext(stepContext);
+        reader.beforeChunk(failed);
+        read(reader, PAGE_SIZE);
+        reader.afterChunkError(failed);
+
+        // 두번째 chunk가 commit 되어도 rollback 된 chunk 앞까지만 저장한다.
+        ChunkContext committed = new ChunkContext(stepContext);
+        reader.beforeChunk(committed);
+        read(reader, PAGE_SIZE);
+        reader.afterChunk(committed);
+        reader.update(executionContext);
+
+        Assertions.assertThat(executionContext.getLong("prefetchReader.lastId")).isEqualTo(ids.get(0) - 1);
+
+        // fault tolerant step처럼 같은 ChunkContext로 다시 처리(read 없이)해서 commit 되면 위치가 앞으로 간다.
+        reader.beforeChunk(failed);
+        reader.afterChunk(failed);
+        reader.update(executionContext);
+        reader.close();
+
+        Assertions.assertThat(executionContext.getLong("prefetchReader.lastId")).isEqualTo(ids.get(2 * PAGE_SIZE - 1));
+    }
+
+    private void read(UserPrefetchItemReader reader, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            Assertions.assertThat(reader.read()).isNotNull();
+        }
+    }
+}
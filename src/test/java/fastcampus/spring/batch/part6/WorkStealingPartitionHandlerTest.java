@@ -0,0 +1,154 @@
+package fastcampus.spring.batch.part6;
+
+import fastcampus.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+@RunWith(SpringRunner.class)
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = {TestConfiguration.class})
+class WorkStealingPartitionHandlerTest {
+
+    private static final int GRID_SIZE = 12;
+    private static final int WORKER_COUNT = 2;
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Test
+    public void test_slow_range_does_not_hold_other_ranges() throws Exception {
+        // range0은 나머지 범위가 모두 끝날때까지 기다린다. 쓰레드마다 범위를 미리 나눠주면 range0의 쓰레드 몫은 끝나지 않는다.
+        CountDownLatch others = new CountDownLatch(GRID_SIZE - 1);
+        AtomicBoolean slowRangeReleased = new AtomicBoolean();
+
+        Job job = job("workStealingTailJob", (contribution, chunkContext) -> {
+            int index = chunkContext.getStepContext().getStepExecution().getExecutionContext().getInt("index");
+            if (index == 0) {
+                slowRangeReleased.set(others.await(10, TimeUnit.SECONDS));
+            } else {
+                others.countDown();
+            }
+            return RepeatStatus.FINISHED;
+        });
+
+        JobExecution jobExecution = jobLauncher.run(job, jobParameters());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(slowRangeReleased).isTrue();
+        Assertions.assertThat(workers(jobExecution)).hasSize(GRID_SIZE);
+    }
+
+    @Test
+    public void test_restart_runs_only_unfinished_ranges() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+
+        Job job = job("workStealingRestartJob", (contribution, chunkContext) -> {
+            int index = chunkContext.getStepContext().getStepExecution().getExecutionContext().getInt("index");
+            executed.add(index);
+            if (index == 5 && fail.get()) {
+                throw new IllegalStateException("range5 실패");
+            }
+            return RepeatStatus.FINISHED;
+        });
+
+        JobParameters jobParameters = jobParameters();
+        JobExecution failed = jobLauncher.run(job, jobParameters);
+
+        // 실패한 범위가 있어도 다른 쓰레드는 나머지 범위를 모두 처리한다.
+        Assertions.assertThat(failed.getStatus()).isEqualTo(BatchStatus.FAILED);
+        Assertions.assertThat(executed).hasSize(GRID_SIZE);
+
+        fail.set(false);
+        executed.clear();
+        JobExecution restarted = jobLauncher.run(job, jobParameters);
+
+        // COMPLETED 된 범위는 다시 실행하지 않는다.
+        Assertions.assertThat(restarted.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(restarted.getJobId()).isEqualTo(failed.getJobId());
+        Assertions.assertThat(executed).containsExactly(5);
+        Assertions.assertThat(workers(restarted)).hasSize(1);
+    }
+
+    private Job job(String name, Tasklet tasklet) throws Exception {
+        Step worker = stepBuilderFactory.get(name + "_rangeStep")
+                .tasklet(tasklet)
+                .build();
+
+        WorkStealingPartitionHandler handler = new WorkStealingPartitionHandler();
+        handler.setStep(worker);
+        handler.setTaskExecutor(new SimpleAsyncTaskExecutor(name + "-"));
+        handler.setWorkerCount(WORKER_COUNT);
+        handler.setGridSize(GRID_SIZE);
+        handler.afterPropertiesSet();
+
+        Step manager = stepBuilderFactory.get(name + "_rangeStep.manager")
+                .partitioner(name + "_rangeStep", partitioner())
+                .partitionHandler(handler)
+                .build();
+
+        return jobBuilderFactory.get(name)
+                .start(manager)
+                .build();
+    }
+
+    private Partitioner partitioner() {
+        return gridSize -> {
+            Map<String, ExecutionContext> result = new HashMap<>();
+            for (int i = 0; i < gridSize; i++) {
+                ExecutionContext executionContext = new ExecutionContext();
+                executionContext.putInt("index", i);
+                result.put("range" + i, executionContext);
+            }
+            return result;
+        };
+    }
+
+    private JobParameters jobParameters() {
+        return new JobParametersBuilder()
+                .addLong("time", System.nanoTime())
+                .toJobParameters();
+    }
+
+    private List<StepExecution> workers(JobExecution jobExecution) {
+        return jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().contains("_rangeStep:"))
+                .collect(Collectors.toList());
+    }
+}